@@ -5,6 +5,7 @@ plugins {
     id("jacoco")
     id("org.sonarqube") version "4.4.1.3373"
     id("org.openapi.generator") version "7.10.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -30,6 +31,9 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-data-r2dbc")
     implementation("org.springframework.boot:spring-boot-starter-actuator")
 
+    //Cache
+    implementation("com.github.ben-manes.caffeine:caffeine")
+
     //Postgre
     implementation("org.postgresql:r2dbc-postgresql:1.0.5.RELEASE")
 
@@ -51,9 +55,14 @@ dependencies {
     implementation("io.swagger.core.v3:swagger-annotations:2.2.21")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("io.projectreactor:reactor-test")
+    // Instala BlockHound en todos los tests: una llamada bloqueante en un hilo no bloqueante falla el test
+    testImplementation("io.projectreactor.tools:blockhound-junit-platform:1.0.11.RELEASE")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    //Benchmarks (src/jmh)
+    jmhImplementation("org.springframework:spring-test")
 }
 
 dependencyManagement {
@@ -64,6 +73,8 @@ dependencyManagement {
 
 tasks.test {
     useJUnitPlatform()
+    // BlockHound instrumenta clases del JDK en caliente (JDK 13+)
+    jvmArgs("-XX:+AllowRedefinitionToAddDeleteMethods")
     finalizedBy("jacocoTestReport")
 }
 
@@ -76,6 +87,20 @@ tasks.named("jacocoTestReport", JacocoReport::class) {
     }
 }
 
+// ./gradlew jmh  (resultados en build/results/jmh/results.json)
+// Filtrar benchmarks: ./gradlew jmh -PjmhIncludes=ProductMapper
+jmh {
+    jmhVersion.set("1.37")
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    if (project.hasProperty("jmhIncludes")) {
+        includes.add(project.property("jmhIncludes").toString())
+    }
+}
+
 sonarqube {
     properties {
         property("sonar.projectKey", "josevillacorta-msproductos")
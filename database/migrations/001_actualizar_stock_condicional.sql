@@ -0,0 +1,13 @@
+-- Migración para bases existentes: actualizar_stock pasa a ser un descuento condicional
+-- que devuelve la fila modificada (el tipo de retorno cambia, hay que recrearla).
+DROP FUNCTION IF EXISTS actualizar_stock(BIGINT, INTEGER);
+
+CREATE FUNCTION actualizar_stock(
+    p_producto_id BIGINT,
+    p_cantidad INTEGER
+) RETURNS SETOF productos AS $$
+    UPDATE productos
+    SET stock = stock - p_cantidad
+    WHERE id = p_producto_id AND stock >= p_cantidad
+    RETURNING *;
+$$ LANGUAGE sql;
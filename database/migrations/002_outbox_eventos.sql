@@ -0,0 +1,8 @@
+-- Outbox: eventos pendientes de publicar en Kafka (productos.outbox.enabled=true)
+CREATE TABLE IF NOT EXISTS outbox_eventos (
+    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    topic VARCHAR(255) NOT NULL,
+    tipo VARCHAR(255) NOT NULL,
+    payload TEXT NOT NULL,
+    creado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
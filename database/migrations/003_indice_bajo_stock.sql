@@ -0,0 +1,15 @@
+-- Índice parcial para la consulta de bajo stock; CONCURRENTLY para no bloquear escrituras
+-- (ejecutar fuera de una transacción)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_productos_bajo_stock ON productos (stock) WHERE activo;
+
+-- productos_bajo_stock devolvía solo id, nombre y stock: pasa a devolver filas completas
+DROP FUNCTION IF EXISTS productos_bajo_stock(INTEGER);
+
+CREATE FUNCTION productos_bajo_stock(
+    p_minimo INTEGER
+) RETURNS SETOF productos AS $$
+    SELECT p.*
+    FROM productos p
+    WHERE p.activo AND p.stock < p_minimo
+    ORDER BY p.id;
+$$ LANGUAGE sql STABLE;
@@ -0,0 +1,2 @@
+-- Instante del comando original, para reenviarlo en la cabecera x-comando-ts al publicar desde la outbox
+ALTER TABLE outbox_eventos ADD COLUMN IF NOT EXISTS comando_ts BIGINT;
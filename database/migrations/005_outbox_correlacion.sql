@@ -0,0 +1,2 @@
+-- Correlación de los comandos con Prefer: wait-for-projection, se reenvía en la cabecera x-correlacion
+ALTER TABLE outbox_eventos ADD COLUMN IF NOT EXISTS correlacion VARCHAR(36);
@@ -0,0 +1,11 @@
+-- Búsqueda de GET /api/productos/search
+-- Texto de nombre (peso A) y descripción (peso B) mantenido por Postgres, con índice GIN
+ALTER TABLE productos ADD COLUMN IF NOT EXISTS busqueda tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('spanish', coalesce(nombre, '')), 'A') ||
+    setweight(to_tsvector('spanish', coalesce(descripcion, '')), 'B')
+) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_productos_busqueda ON productos USING GIN (busqueda);
+
+-- Rango de precio y orden por precio con keyset (precio, id), en ambos sentidos
+CREATE INDEX IF NOT EXISTS idx_productos_precio ON productos (precio, id) WHERE activo;
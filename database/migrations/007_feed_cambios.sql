@@ -0,0 +1,49 @@
+-- Feed de cambios (GET /api/productos/changes). Requiere PostgreSQL 14 o posterior (xid8, CREATE OR REPLACE TRIGGER).
+-- El DEFAULT volátil reescribe la tabla: aplicar en una ventana de mantenimiento
+CREATE SEQUENCE IF NOT EXISTS productos_version_seq;
+
+ALTER TABLE productos
+    ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT nextval('productos_version_seq'),
+    ADD COLUMN IF NOT EXISTS actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS transaccion xid8 NOT NULL DEFAULT pg_current_xact_id();
+
+-- Baja lógica para el feed de cambios: una fila por producto eliminado (tombstone)
+CREATE TABLE IF NOT EXISTS productos_eliminados (
+    id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL,
+    eliminado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    transaccion xid8 NOT NULL DEFAULT pg_current_xact_id()
+);
+
+-- Toda escritura de productos (consumidor, lotes, ajustes de stock) toma una versión nueva
+-- y registra su transacción, que GET /api/productos/changes usa para no saltarse filas
+-- de transacciones que confirman fuera de orden
+CREATE OR REPLACE FUNCTION productos_versionar() RETURNS trigger AS $$
+BEGIN
+    NEW.version := nextval('productos_version_seq');
+    NEW.actualizado_en := CURRENT_TIMESTAMP;
+    NEW.transaccion := pg_current_xact_id();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_productos_version BEFORE INSERT OR UPDATE ON productos
+    FOR EACH ROW EXECUTE FUNCTION productos_versionar();
+
+CREATE OR REPLACE FUNCTION productos_registrar_baja() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO productos_eliminados (id, version)
+    VALUES (OLD.id, nextval('productos_version_seq'))
+    ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version,
+                                   eliminado_en = CURRENT_TIMESTAMP,
+                                   transaccion = pg_current_xact_id();
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE TRIGGER trg_productos_baja AFTER DELETE ON productos
+    FOR EACH ROW EXECUTE FUNCTION productos_registrar_baja();
+
+-- El feed recorre ambas tablas en orden (transaccion, version)
+CREATE INDEX IF NOT EXISTS idx_productos_cambios ON productos (transaccion, version);
+CREATE INDEX IF NOT EXISTS idx_productos_eliminados_cambios ON productos_eliminados (transaccion, version);
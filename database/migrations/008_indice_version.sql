@@ -0,0 +1,3 @@
+-- max(version) para el ETag de los listados (CatalogVersion) con un único acceso al índice
+CREATE INDEX IF NOT EXISTS idx_productos_version ON productos (version);
+CREATE INDEX IF NOT EXISTS idx_productos_eliminados_version ON productos_eliminados (version);
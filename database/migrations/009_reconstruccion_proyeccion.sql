@@ -0,0 +1,27 @@
+-- Reconstrucción de la proyección (/actuator/proyeccion): el intercambio renombra productos a
+-- productos_anterior. Las funciones que devolvían SETOF productos quedarían ligadas al tipo de fila
+-- de la tabla antigua e impedirían borrarla: pasan a declarar sus columnas (hay que recrearlas).
+DROP FUNCTION IF EXISTS actualizar_stock(BIGINT, INTEGER);
+
+CREATE FUNCTION actualizar_stock(
+    p_producto_id BIGINT,
+    p_cantidad INTEGER
+) RETURNS TABLE (id BIGINT, nombre VARCHAR, descripcion TEXT, precio NUMERIC, stock INTEGER, activo BOOLEAN,
+                 fecha_creacion TIMESTAMP, version BIGINT, actualizado_en TIMESTAMP) AS $$
+    UPDATE productos AS p
+    SET stock = p.stock - p_cantidad
+    WHERE p.id = p_producto_id AND p.stock >= p_cantidad
+    RETURNING p.id, p.nombre, p.descripcion, p.precio, p.stock, p.activo, p.fecha_creacion, p.version, p.actualizado_en;
+$$ LANGUAGE sql;
+
+DROP FUNCTION IF EXISTS productos_bajo_stock(INTEGER);
+
+CREATE FUNCTION productos_bajo_stock(
+    p_minimo INTEGER
+) RETURNS TABLE (id BIGINT, nombre VARCHAR, descripcion TEXT, precio NUMERIC, stock INTEGER, activo BOOLEAN,
+                 fecha_creacion TIMESTAMP, version BIGINT, actualizado_en TIMESTAMP) AS $$
+    SELECT p.id, p.nombre, p.descripcion, p.precio, p.stock, p.activo, p.fecha_creacion, p.version, p.actualizado_en
+    FROM productos p
+    WHERE p.activo AND p.stock < p_minimo
+    ORDER BY p.id;
+$$ LANGUAGE sql STABLE;
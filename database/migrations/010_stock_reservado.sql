@@ -0,0 +1,12 @@
+-- Reservas de stock (StockReservations): cada réplica arrienda bloques de stock de productos y
+-- reserva sobre ellos en memoria. Esta tabla registra lo arrendado y aún no vendido por réplica,
+-- para devolverlo a productos si la réplica deja de renovarlo (caída).
+CREATE TABLE IF NOT EXISTS stock_reservado (
+    producto_id BIGINT NOT NULL,
+    instancia VARCHAR(64) NOT NULL,
+    cantidad INTEGER NOT NULL CHECK (cantidad >= 0),
+    renovado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (producto_id, instancia)
+);
+
+CREATE INDEX IF NOT EXISTS idx_stock_reservado_renovado ON stock_reservado (renovado_en);
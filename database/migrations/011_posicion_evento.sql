@@ -0,0 +1,6 @@
+-- Posición (partición y offset en product-events) del último evento aplicado a cada fila.
+-- ProductConsumer no aplica un evento reintentado si la fila ya refleja uno posterior del mismo producto.
+-- Columnas sin DEFAULT: no reescriben la tabla; las filas existentes quedan sin posición y aceptan el siguiente evento
+ALTER TABLE productos
+    ADD COLUMN IF NOT EXISTS evento_particion INTEGER,
+    ADD COLUMN IF NOT EXISTS evento_offset BIGINT;
@@ -0,0 +1,6 @@
+-- Unidades arrendadas (stock_reservado) por encima del último stock absoluto fijado en productos.
+-- Fijar un stock menor que lo arrendado deja productos.stock en 0 y anota aquí la diferencia; al devolver
+-- el arriendo se descuenta primero de este déficit, así el total no vuelve a superar el valor fijado.
+-- DEFAULT constante: no reescribe la tabla
+ALTER TABLE productos
+    ADD COLUMN IF NOT EXISTS deficit_arriendo INTEGER NOT NULL DEFAULT 0;
@@ -1,3 +1,6 @@
+-- Versión de cada escritura en productos (feed de cambios)
+CREATE SEQUENCE productos_version_seq;
+
 CREATE TABLE productos (
     id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     nombre VARCHAR(255) NOT NULL,
@@ -5,33 +8,124 @@ CREATE TABLE productos (
     precio NUMERIC(10, 2) NOT NULL,
     stock INTEGER NOT NULL CHECK (stock >= 0),
     activo BOOLEAN DEFAULT TRUE,
-    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    -- Texto de búsqueda (GET /api/productos/search): nombre con peso A, descripción con peso B
+    busqueda tsvector GENERATED ALWAYS AS (
+        setweight(to_tsvector('spanish', coalesce(nombre, '')), 'A') ||
+        setweight(to_tsvector('spanish', coalesce(descripcion, '')), 'B')
+    ) STORED,
+    -- Mantenidas por el trigger trg_productos_version
+    version BIGINT NOT NULL DEFAULT nextval('productos_version_seq'),
+    actualizado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    transaccion xid8 NOT NULL DEFAULT pg_current_xact_id(),
+    -- Posición en product-events del último evento aplicado (ProductConsumer descarta reintentos anteriores)
+    evento_particion INTEGER,
+    evento_offset BIGINT,
+    -- Unidades arrendadas por encima del último stock fijado: no vuelven al stock al devolverse
+    deficit_arriendo INTEGER NOT NULL DEFAULT 0
 );
 
+-- Índices de la búsqueda: texto completo y rango/orden por precio con keyset (precio, id)
+CREATE INDEX idx_productos_busqueda ON productos USING GIN (busqueda);
+CREATE INDEX idx_productos_precio ON productos (precio, id) WHERE activo;
+
 -- Procedimiento para actualizar stock
+-- Descuento condicional en una sola sentencia: no devuelve fila si no hay stock suficiente.
+-- La aplicación ejecuta la misma sentencia directamente (ProductRepository.decreaseStock).
+-- Las funciones declaran sus columnas en lugar de SETOF productos: la reconstrucción de la
+-- proyección renombra la tabla y no deben quedar ligadas a su tipo de fila.
 CREATE OR REPLACE FUNCTION actualizar_stock(
     p_producto_id BIGINT,
     p_cantidad INTEGER
-) RETURNS VOID AS $$
-BEGIN
-    UPDATE productos
-    SET stock = stock - p_cantidad
-    WHERE id = p_producto_id;
-END;
-$$ LANGUAGE plpgsql;
+) RETURNS TABLE (id BIGINT, nombre VARCHAR, descripcion TEXT, precio NUMERIC, stock INTEGER, activo BOOLEAN,
+                 fecha_creacion TIMESTAMP, version BIGINT, actualizado_en TIMESTAMP) AS $$
+    UPDATE productos AS p
+    SET stock = p.stock - p_cantidad
+    WHERE p.id = p_producto_id AND p.stock >= p_cantidad
+    RETURNING p.id, p.nombre, p.descripcion, p.precio, p.stock, p.activo, p.fecha_creacion, p.version, p.actualizado_en;
+$$ LANGUAGE sql;
+
+-- Índice parcial para la consulta de bajo stock (solo productos activos)
+CREATE INDEX idx_productos_bajo_stock ON productos (stock) WHERE activo;
 
 -- Procedimiento para obtener productos con bajo stock
+-- Devuelve filas completas; al ser LANGUAGE sql el planificador la expande y usa el índice parcial.
+-- La aplicación consulta la tabla directamente para poder paginar (ProductService.obtenerProductosBajoStock).
 CREATE OR REPLACE FUNCTION productos_bajo_stock(
     p_minimo INTEGER
-) RETURNS TABLE(
-    id BIGINT,
-    nombre VARCHAR,
-    stock INTEGER
-) AS $$
-BEGIN
-    RETURN QUERY
-    SELECT p.id, p.nombre, p.stock
+) RETURNS TABLE (id BIGINT, nombre VARCHAR, descripcion TEXT, precio NUMERIC, stock INTEGER, activo BOOLEAN,
+                 fecha_creacion TIMESTAMP, version BIGINT, actualizado_en TIMESTAMP) AS $$
+    SELECT p.id, p.nombre, p.descripcion, p.precio, p.stock, p.activo, p.fecha_creacion, p.version, p.actualizado_en
     FROM productos p
-    WHERE p.stock < p_minimo AND p.activo = true;
+    WHERE p.activo AND p.stock < p_minimo
+    ORDER BY p.id;
+$$ LANGUAGE sql STABLE;
+
+-- Outbox: eventos pendientes de publicar en Kafka (productos.outbox.enabled=true)
+CREATE TABLE outbox_eventos (
+    id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    topic VARCHAR(255) NOT NULL,
+    tipo VARCHAR(255) NOT NULL,
+    payload TEXT NOT NULL,
+    creado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    comando_ts BIGINT,
+    correlacion VARCHAR(36)
+);
+
+-- Baja lógica para el feed de cambios: una fila por producto eliminado (tombstone)
+CREATE TABLE productos_eliminados (
+    id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL,
+    eliminado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    transaccion xid8 NOT NULL DEFAULT pg_current_xact_id()
+);
+
+-- Toda escritura de productos (consumidor, lotes, ajustes de stock) toma una versión nueva
+-- y registra su transacción, que GET /api/productos/changes usa para no saltarse filas
+-- de transacciones que confirman fuera de orden
+CREATE OR REPLACE FUNCTION productos_versionar() RETURNS trigger AS $$
+BEGIN
+    NEW.version := nextval('productos_version_seq');
+    NEW.actualizado_en := CURRENT_TIMESTAMP;
+    NEW.transaccion := pg_current_xact_id();
+    RETURN NEW;
 END;
-$$ LANGUAGE plpgsql;
\ No newline at end of file
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_productos_version BEFORE INSERT OR UPDATE ON productos
+    FOR EACH ROW EXECUTE FUNCTION productos_versionar();
+
+CREATE OR REPLACE FUNCTION productos_registrar_baja() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO productos_eliminados (id, version)
+    VALUES (OLD.id, nextval('productos_version_seq'))
+    ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version,
+                                   eliminado_en = CURRENT_TIMESTAMP,
+                                   transaccion = pg_current_xact_id();
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_productos_baja AFTER DELETE ON productos
+    FOR EACH ROW EXECUTE FUNCTION productos_registrar_baja();
+
+-- El feed recorre ambas tablas en orden (transaccion, version)
+CREATE INDEX idx_productos_cambios ON productos (transaccion, version);
+CREATE INDEX idx_productos_eliminados_cambios ON productos_eliminados (transaccion, version);
+
+-- max(version) con un único acceso al índice (el ETag de los listados, CatalogVersion, usa idx_*_cambios)
+CREATE INDEX idx_productos_version ON productos (version);
+CREATE INDEX idx_productos_eliminados_version ON productos_eliminados (version);
+
+-- Reservas de stock (StockReservations): cada réplica arrienda bloques de stock de productos y
+-- reserva sobre ellos en memoria. Esta tabla registra lo arrendado y aún no vendido por réplica,
+-- para devolverlo a productos si la réplica deja de renovarlo (caída).
+CREATE TABLE stock_reservado (
+    producto_id BIGINT NOT NULL,
+    instancia VARCHAR(64) NOT NULL,
+    cantidad INTEGER NOT NULL CHECK (cantidad >= 0),
+    renovado_en TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (producto_id, instancia)
+);
+
+CREATE INDEX idx_stock_reservado_renovado ON stock_reservado (renovado_en);
@@ -0,0 +1,52 @@
+package org.example.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.classes.Producto;
+import org.example.service.ProductService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * ProductService sobre un mapa en memoria, sin Postgres ni Kafka,
+ * para medir solo el pipeline HTTP (router, handler, mapper, codecs).
+ */
+class InMemoryProductService extends ProductService {
+
+    private final ConcurrentSkipListMap<Long, Producto> productos = new ConcurrentSkipListMap<>();
+
+    InMemoryProductService(int cantidad) {
+        super(null, null, null, null, null, null, new SimpleMeterRegistry(), 500, Duration.ZERO);
+        for (long id = 1; id <= cantidad; id++) {
+            productos.put(id, ProductFixtures.producto(id));
+        }
+    }
+
+    @Override
+    public Mono<Producto> findById(Long id) {
+        return Mono.justOrEmpty(productos.get(id));
+    }
+
+    @Override
+    public Flux<Producto> findPage(Long after, int limit) {
+        return Flux.fromIterable(productos.tailMap(after != null ? after : Long.MIN_VALUE, false).values())
+                .take(limit);
+    }
+
+    @Override
+    public Flux<Producto> streamAll(Long after) {
+        return Flux.fromIterable(productos.tailMap(after != null ? after : Long.MIN_VALUE, false).values());
+    }
+
+    @Override
+    public Mono<Producto> save(Producto producto) {
+        return Mono.just(producto);
+    }
+
+    @Override
+    public Mono<Producto> update(Long id, Producto updated) {
+        return Mono.just(updated);
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.benchmark;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.serde.ProductEventDeserializer;
+import org.example.events.serde.ProductEventSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización de eventos de Kafka: JSON con cabeceras de tipo (formato actual) frente a
+ * ProductEventSerializer. Los bytes por evento de cada formato salen en el informe de JMH
+ * como contadores auxiliares (Tamanos), junto al tiempo de cada benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductEventSerdeBenchmark {
+
+    @Param({"created", "stock"})
+    public String evento;
+
+    private Object payload;
+    private JsonSerializer<Object> jsonSerializer;
+    private JsonDeserializer<Object> jsonDeserializer;
+    private ProductEventSerializer binarySerializer;
+    private ProductEventDeserializer binaryDeserializer;
+    private RecordHeaders jsonHeaders;
+    private byte[] json;
+    private byte[] binario;
+    private int cabecerasJson;
+
+    /**
+     * Bytes por evento del formato de cada benchmark. JMH pone los contadores a cero al empezar
+     * cada iteración; se fijan (no se acumulan) en cada operación, así el informe da el tamaño.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Tamanos {
+        public long bytes;
+        // Cabeceras de tipo que añade JSON (el binario no las necesita)
+        public long bytesCabeceras;
+    }
+
+    @Setup
+    public void setup() {
+        payload = "created".equals(evento)
+                ? new ProductCreatedEvent(101L, "Producto 101", "Descripción del producto 101", 19.99, 42)
+                : new ProductStockUpdatedEvent(101L, 42);
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>();
+        jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "org.example.events"), false);
+        binarySerializer = new ProductEventSerializer();
+        binaryDeserializer = new ProductEventDeserializer();
+        binaryDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "org.example.events"), false);
+
+        jsonHeaders = new RecordHeaders();
+        json = jsonSerializer.serialize("product", jsonHeaders, payload);
+        binario = binarySerializer.serialize("product", payload);
+        for (var header : jsonHeaders) {
+            cabecerasJson += header.key().length() + header.value().length;
+        }
+    }
+
+    @Benchmark
+    public byte[] serializarJson(Tamanos tamanos) {
+        byte[] data = jsonSerializer.serialize("product", new RecordHeaders(), payload);
+        tamanos.bytes = data.length;
+        tamanos.bytesCabeceras = cabecerasJson;
+        return data;
+    }
+
+    @Benchmark
+    public byte[] serializarBinario(Tamanos tamanos) {
+        byte[] data = binarySerializer.serialize("product", new RecordHeaders(), payload);
+        tamanos.bytes = data.length;
+        return data;
+    }
+
+    @Benchmark
+    public Object deserializarJson(Tamanos tamanos) {
+        tamanos.bytes = json.length;
+        tamanos.bytesCabeceras = cabecerasJson;
+        return jsonDeserializer.deserialize("product", jsonHeaders, json);
+    }
+
+    @Benchmark
+    public Object deserializarBinario(Tamanos tamanos) {
+        tamanos.bytes = binario.length;
+        return binaryDeserializer.deserialize("product", new RecordHeaders(), binario);
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.benchmark;
+
+import org.example.classes.Producto;
+import org.example.openapi.dto.Product;
+
+import java.time.LocalDateTime;
+
+/**
+ * Datos de prueba compartidos por los benchmarks.
+ */
+final class ProductFixtures {
+
+    private ProductFixtures() {
+    }
+
+    static Producto producto(long id) {
+        return new Producto(id, "Laptop Ultra " + id, "Portátil de alto rendimiento con 32GB de RAM",
+                1250.99, 45, true, LocalDateTime.of(2025, 1, 1, 12, 0), id, LocalDateTime.of(2025, 1, 1, 12, 0));
+    }
+
+    static Product dto(long id) {
+        Product dto = new Product();
+        dto.setId((int) id);
+        dto.setName("Laptop Ultra " + id);
+        dto.setDescription("Portátil de alto rendimiento con 32GB de RAM");
+        dto.setPrice(1250.99f);
+        dto.setStock(45);
+        return dto;
+    }
+}
@@ -0,0 +1,99 @@
+package org.example.benchmark;
+
+import org.example.cache.CatalogVersion;
+import org.example.handler.ProductHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.mapper.ProductMapper;
+import org.example.metrics.ProductMetrics;
+import org.example.notification.StockNotifier;
+import org.example.openapi.dto.Product;
+import org.example.router.ProductRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput extremo a extremo de las rutas de ProductRouter con WebTestClient,
+ * sobre un servicio en memoria: mide routing, handler, mapper y codecs sin I/O externo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class ProductHandlerBenchmark {
+
+    private WebTestClient client;
+    private Product nuevo;
+
+    @Setup
+    public void setup() {
+        ProductHandler handler = new ProductHandler(new InMemoryProductService(10_000), new ProductMapper(),
+                new StockNotifier(16, BufferOverflowStrategy.DROP_OLDEST, 16), new FixedCatalogVersion(),
+                100, 1000, 512, 5, Duration.ofSeconds(15), Duration.ofSeconds(2), Duration.ofSeconds(10), 5000,
+                "no-cache", "no-cache");
+        client = WebTestClient.bindToRouterFunction(new ProductRouter().route(handler, new ProductMetrics(new SimpleMeterRegistry()))).build();
+        nuevo = ProductFixtures.dto(0);
+        nuevo.setId(null);
+    }
+
+    @Benchmark
+    public byte[] getById() {
+        return client.get().uri("/api/productos/{id}", 4242)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    // Revalidación con el ETag vigente: 304 sin cuerpo
+    @Benchmark
+    public int getByIdNotModified() {
+        return client.get().uri("/api/productos/{id}", 4242)
+                .header("If-None-Match", "\"4242-4242\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .returnResult(Void.class).getStatus().value();
+    }
+
+    @Benchmark
+    public byte[] getPage() {
+        return client.get().uri("/api/productos?limit=100&after=5000")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Benchmark
+    public byte[] create() {
+        return client.post().uri("/api/productos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(nuevo)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    // Versión de catálogo fija, sin base de datos
+    private static final class FixedCatalogVersion extends CatalogVersion {
+
+        FixedCatalogVersion() {
+            super(null, Duration.ofSeconds(1));
+        }
+
+        @Override
+        public Mono<Long> actual() {
+            return Mono.just(1L);
+        }
+    }
+}
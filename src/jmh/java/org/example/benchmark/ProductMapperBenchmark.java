@@ -0,0 +1,43 @@
+package org.example.benchmark;
+
+import org.example.classes.Producto;
+import org.example.mapper.ProductMapper;
+import org.example.openapi.dto.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversión entidad/DTO de ProductMapper, que se ejecuta en cada petición.
+ * localDateTimeNow aísla el coste de la fecha que toProducto asigna en cada alta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductMapperBenchmark {
+
+    private final ProductMapper mapper = new ProductMapper();
+    private final Producto producto = ProductFixtures.producto(101);
+    private final Product dto = ProductFixtures.dto(101);
+
+    @Benchmark
+    public Product toDto() {
+        return mapper.toDto(producto);
+    }
+
+    @Benchmark
+    public Producto toProducto() {
+        return mapper.toProducto(dto);
+    }
+
+    @Benchmark
+    public LocalDateTime localDateTimeNow() {
+        return LocalDateTime.now();
+    }
+}
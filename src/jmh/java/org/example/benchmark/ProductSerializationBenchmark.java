@@ -0,0 +1,57 @@
+package org.example.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.example.openapi.dto.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Serialización Jackson del DTO generado Product, con un ObjectMapper configurado
+ * como el de Spring Boot. pagina100 corresponde a una página por defecto de GET /api/productos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProductSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter pageWriter;
+    private Product producto;
+    private byte[] json;
+    private List<Product> pagina;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        producto = ProductFixtures.dto(101);
+        json = objectMapper.writeValueAsBytes(producto);
+        pagina = LongStream.range(0, 100).mapToObj(ProductFixtures::dto).toList();
+        pageWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+    }
+
+    @Benchmark
+    public byte[] serializar() throws Exception {
+        return objectMapper.writeValueAsBytes(producto);
+    }
+
+    @Benchmark
+    public Product deserializar() throws Exception {
+        return objectMapper.readValue(json, Product.class);
+    }
+
+    @Benchmark
+    public byte[] pagina100() throws Exception {
+        return pageWriter.writeValueAsBytes(pagina);
+    }
+}
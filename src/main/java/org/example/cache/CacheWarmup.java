@@ -0,0 +1,195 @@
+package org.example.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.service.ProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calienta ProductCache al arrancar, antes de aceptar tráfico: el indicador de salud cacheWarmup
+ * (incluido en el grupo readiness) está OUT_OF_SERVICE hasta que termina, falla o vence limite-tiempo.
+ * <ul>
+ *     <li>Sin instantánea: carga en streaming los primeros productos del catálogo, hasta el tamaño de la caché</li>
+ *     <li>Con instantánea (productos.arranque.instantanea.ruta): carga solo los ids más usados que guardó
+ *     la última réplica, en consultas de lote-ids ids. La instantánea se reescribe cada intervalo y al parar</li>
+ * </ul>
+ * El informe de arranque (productos cargados, duración del calentamiento y tiempo hasta estar listo)
+ * se registra en el log y en los detalles del indicador.
+ */
+@Component
+public class CacheWarmup implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmup.class);
+    private static final int FORMATO = 1;
+
+    private final ProductService service;
+    private final ProductCache cache;
+    private final boolean enabled;
+    private final int maximo;
+    private final int loteIds;
+    private final Duration limiteTiempo;
+    private final Path instantanea;
+    private final Duration intervalo;
+    private volatile String estado = "pendiente";
+    private volatile long cargados;
+    private volatile long duracionMs;
+    private volatile long listoMs;
+    private Disposable guardado;
+
+    public CacheWarmup(ProductService service, ProductCache cache, MeterRegistry registry,
+                       @Value("${productos.arranque.enabled:true}") boolean enabled,
+                       @Value("${productos.cache.tamano-maximo:100000}") int maximo,
+                       @Value("${productos.arranque.lote-ids:1000}") int loteIds,
+                       @Value("${productos.arranque.limite-tiempo:60s}") Duration limiteTiempo,
+                       @Value("${productos.arranque.instantanea.ruta:}") String instantanea,
+                       @Value("${productos.arranque.instantanea.intervalo:5m}") Duration intervalo) {
+        this.service = service;
+        this.cache = cache;
+        this.enabled = enabled;
+        this.maximo = maximo;
+        this.loteIds = loteIds;
+        this.limiteTiempo = limiteTiempo;
+        this.instantanea = instantanea.isBlank() ? null : Path.of(instantanea);
+        this.intervalo = intervalo;
+        Gauge.builder("productos.arranque.calentamiento", this, c -> c.duracionMs)
+                .description("Duración del calentamiento de la caché al arrancar (ms)")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(ApplicationReadyEvent event) {
+        long arranqueMs = event.getTimeTaken() != null ? event.getTimeTaken().toMillis() : 0;
+        if (!enabled) {
+            estado = "desactivado";
+            return;
+        }
+        estado = "cargando";
+        long inicio = System.nanoTime();
+        cargar()
+                .timeout(limiteTiempo)
+                .doOnNext(n -> estado = "completo")
+                .onErrorResume(e -> {
+                    // Mejor servir en frío que no llegar a estar listo
+                    log.warn("Calentamiento de la caché interrumpido; la réplica arranca en frío", e);
+                    estado = "incompleto";
+                    return Mono.just(cargados);
+                })
+                .subscribe(n -> {
+                    duracionMs = Duration.ofNanos(System.nanoTime() - inicio).toMillis();
+                    listoMs = arranqueMs + duracionMs;
+                    log.info("Arranque: {} productos en caché en {} ms ({}); lista para tráfico a los {} ms",
+                            cargados, duracionMs, estado, listoMs);
+                });
+        if (instantanea != null) {
+            guardado = Flux.interval(intervalo)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> guardar())
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (guardado != null) {
+            guardado.dispose();
+            guardar().block(Duration.ofSeconds(5));
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = switch (estado) {
+            case "pendiente", "cargando" -> Health.outOfService();
+            default -> Health.up();
+        };
+        return builder.withDetail("estado", estado)
+                .withDetail("productos", cargados)
+                .withDetail("duracionMs", duracionMs)
+                .withDetail("listoTrasArranqueMs", listoMs)
+                .build();
+    }
+
+    private Mono<Long> cargar() {
+        return Mono.fromCallable(() -> instantanea != null && Files.exists(instantanea) ? leer(instantanea) : List.<Long>of())
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(IOException.class, e -> {
+                    log.warn("Instantánea de la caché ilegible ({}), se carga el catálogo", instantanea, e);
+                    return Mono.just(List.of());
+                })
+                .flatMapMany(ids -> ids.isEmpty()
+                        ? service.streamAll(null).take(maximo).doOnNext(cache::put)
+                        // findByIds ya deja cada producto en la caché
+                        : Flux.fromIterable(ids).buffer(loteIds).concatMap(lote -> service.findByIds(lote)
+                                .flatMapIterable(encontrados -> encontrados.values())))
+                .doOnNext(producto -> cargados++)
+                .count();
+    }
+
+    private Mono<Void> guardar() {
+        return Mono.fromRunnable(() -> {
+                    try {
+                        escribir(instantanea, cache.hottest(maximo));
+                    } catch (IOException e) {
+                        log.warn("No se pudo guardar la instantánea de la caché en {}", instantanea, e);
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    // Formato: versión, número de ids y los ids; se escribe en un temporal y se renombra
+    static void escribir(Path ruta, List<Long> ids) throws IOException {
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            out.writeInt(FORMATO);
+            out.writeInt(ids.size());
+            for (Long id : ids) {
+                out.writeLong(id);
+            }
+        }
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<Long> leer(Path ruta) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ruta)))) {
+            int formato = in.readInt();
+            if (formato != FORMATO) {
+                throw new IOException("Formato de instantánea desconocido: " + formato);
+            }
+            int total = in.readInt();
+            if (total < 0) {
+                throw new IOException("Instantánea corrupta: " + total + " ids");
+            }
+            List<Long> ids = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                ids.add(in.readLong());
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.cache;
+
+import org.example.config.ReadWriteRoutingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versión del catálogo completo, base de los ETag de los listados.
+ * No sale de max(version): una transacción que toma una versión menor y confirma después de otra
+ * no la movería. Como el feed de cambios (ProductService.changes), se toma la transacción (xid8) más
+ * reciente de productos y productos_eliminados anterior a la más antigua todavía abierta
+ * (pg_snapshot_xmin): cada transacción que confirma entra en ese horizonte con un xid mayor que todas
+ * las ya contadas, así que siempre la hace avanzar. Un cambio se refleja en el ETag cuando terminan
+ * las transacciones que empezaron antes que él. Los índices (transaccion, version) resuelven la
+ * consulta sin recorrer las tablas.
+ * Las escrituras y los eventos vistos la marcan como sucia; sucia o pasado el ttl se relee.
+ */
+@Component
+public class CatalogVersion {
+
+    // ORDER BY ... LIMIT 1 en lugar de max(): PostgreSQL 14 no tiene max(xid8)
+    private static final String MAXIMA = "SELECT COALESCE(GREATEST("
+            + "(SELECT transaccion FROM productos WHERE transaccion < pg_snapshot_xmin(pg_current_snapshot())"
+            + " ORDER BY transaccion DESC LIMIT 1),"
+            + " (SELECT transaccion FROM productos_eliminados WHERE transaccion < pg_snapshot_xmin(pg_current_snapshot())"
+            + " ORDER BY transaccion DESC LIMIT 1))::text::bigint, 0) AS version";
+
+    private final DatabaseClient databaseClient;
+    private final long ttlNanos;
+    private final AtomicLong version = new AtomicLong();
+    // Sube con cada cambio sin versión conocida; la lectura solo limpia la generación que vio
+    private final AtomicLong generacion = new AtomicLong(1);
+    private volatile long generacionLeida;
+    private volatile long leidaEn;
+
+    public CatalogVersion(DatabaseClient databaseClient,
+                          @Value("${productos.etag.catalogo-ttl:1s}") Duration ttl) {
+        this.databaseClient = databaseClient;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public Mono<Long> actual() {
+        long vista = generacion.get();
+        if (vista == generacionLeida && System.nanoTime() - leidaEn < ttlNanos) {
+            return Mono.just(version.get());
+        }
+        return databaseClient.sql(MAXIMA)
+                .map(row -> row.get("version", Long.class))
+                .one()
+                .contextWrite(ReadWriteRoutingConnectionFactory::lectura)
+                .map(leida -> {
+                    long actual = version.accumulateAndGet(leida, Math::max);
+                    leidaEn = System.nanoTime();
+                    generacionLeida = vista;
+                    return actual;
+                });
+    }
+
+    public void marcar() {
+        generacion.incrementAndGet();
+    }
+}
@@ -0,0 +1,112 @@
+package org.example.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.classes.Producto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Caché de lectura en memoria delante de ProductRepository.
+ * Acotada por tamaño y TTL; las métricas de aciertos, fallos y expulsiones
+ * se publican en Micrometer como cache.* con tag cache=productos.
+ * Guarda y entrega copias porque Producto es mutable.
+ * Las lecturas de la base cachean con putSiVigente: si el id se invalidó mientras
+ * se consultaba, la fila leída puede ser anterior y no se guarda.
+ */
+@Component
+public class ProductCache {
+
+    private static final int FRANJAS = 1024;
+
+    private final Cache<Long, Producto> cache;
+    // Generación de invalidaciones por franja de ids (acotado: ids distintos pueden compartir franja)
+    private final AtomicLongArray generaciones = new AtomicLongArray(FRANJAS);
+
+    public ProductCache(MeterRegistry registry,
+                        @Value("${productos.cache.tamano-maximo:100000}") long tamanoMaximo,
+                        @Value("${productos.cache.ttl:5m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(tamanoMaximo)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "productos");
+    }
+
+    public Optional<Producto> get(Long id) {
+        return Optional.ofNullable(cache.getIfPresent(id)).map(ProductCache::copia);
+    }
+
+    public void put(Producto producto) {
+        if (producto.getId() != null) {
+            cache.put(producto.getId(), copia(producto));
+        }
+    }
+
+    // Se toma antes de consultar la base y se pasa a putSiVigente con la fila leída
+    public long generacion(Long id) {
+        return generaciones.get(franja(id));
+    }
+
+    // Guarda la fila solo si no hubo invalidación del id desde que se tomó la generación;
+    // dentro de compute, así una invalidación concurrente no puede quedar por detrás del put
+    public void putSiVigente(Producto producto, long generacion) {
+        if (producto.getId() != null) {
+            cache.asMap().compute(producto.getId(), (key, actual) ->
+                    generaciones.get(franja(key)) == generacion ? copia(producto) : actual);
+        }
+    }
+
+    public void invalidate(Long id) {
+        generaciones.incrementAndGet(franja(id));
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < FRANJAS; i++) {
+            generaciones.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    // Ids más usados según la política de expulsión (los primeros en recargar tras un reinicio)
+    public List<Long> hottest(int limite) {
+        return cache.policy().eviction()
+                .map(eviction -> List.copyOf(eviction.hottest(limite).keySet()))
+                .orElseGet(List::of);
+    }
+
+    // Aplica un cambio sobre la entrada cacheada, solo si existe, sin ir a la base.
+    // La versión queda desconocida (null) hasta la próxima lectura de la base: sin ella no hay ETag
+    public void refresh(Long id, Consumer<Producto> cambio) {
+        generaciones.incrementAndGet(franja(id));
+        cache.asMap().computeIfPresent(id, (key, actual) -> {
+            Producto nuevo = copia(actual);
+            cambio.accept(nuevo);
+            nuevo.setVersion(null);
+            return nuevo;
+        });
+    }
+
+    private static int franja(Long id) {
+        return Long.hashCode(id) & (FRANJAS - 1);
+    }
+
+    private static Producto copia(Producto p) {
+        return new Producto(p.getId(), p.getNombre(), p.getDescripcion(), p.getPrecio(),
+                p.getStock(), p.getActivo(), p.getFechaCreacion(), p.getVersion(), p.getActualizadoEn());
+    }
+}
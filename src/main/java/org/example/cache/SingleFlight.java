@@ -0,0 +1,129 @@
+package org.example.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Agrupa las consultas concurrentes de una misma clave en una sola: la primera (líder) consulta
+ * y las que llegan mientras está en curso reciben su mismo resultado.
+ * Con ventana > 0 el resultado se sigue compartiendo ese tiempo tras terminar; con 0 solo se
+ * comparte lo que está en curso, así ninguna respuesta es más antigua que una consulta propia.
+ * Los errores no se comparten más allá de la consulta en curso.
+ * La consulta corre con el contexto de Reactor del líder.
+ * Métricas: productos.singleflight{operacion, resultado=lider|compartida} y
+ * productos.singleflight.deduplicacion (fracción de peticiones que no consultaron).
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> enVuelo = new ConcurrentHashMap<>();
+    private final Duration ventana;
+    private final Counter lideres;
+    private final Counter compartidas;
+
+    public SingleFlight(String operacion, Duration ventana, MeterRegistry registry) {
+        this.ventana = ventana;
+        this.lideres = Counter.builder("productos.singleflight")
+                .description("Consultas agrupadas por clave")
+                .tag("operacion", operacion)
+                .tag("resultado", "lider")
+                .register(registry);
+        this.compartidas = Counter.builder("productos.singleflight")
+                .description("Consultas agrupadas por clave")
+                .tag("operacion", operacion)
+                .tag("resultado", "compartida")
+                .register(registry);
+        Gauge.builder("productos.singleflight.deduplicacion", this, SingleFlight::deduplicacion)
+                .description("Fracción de peticiones servidas por la consulta de otra")
+                .tag("operacion", operacion)
+                .register(registry);
+        Gauge.builder("productos.singleflight.en.vuelo", enVuelo, Map::size)
+                .description("Claves con una consulta en curso o dentro de la ventana")
+                .tag("operacion", operacion)
+                .register(registry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> consulta) {
+        return Mono.defer(() -> {
+            Mono<V> propio = Mono.defer(consulta)
+                    .doOnError(e -> enVuelo.remove(key))
+                    .doOnSuccess(v -> retirar(List.of(key)))
+                    .cache();
+            Mono<V> existente = enVuelo.putIfAbsent(key, propio);
+            if (existente != null) {
+                compartidas.increment();
+                return existente;
+            }
+            lideres.increment();
+            return propio;
+        });
+    }
+
+    /**
+     * Varias claves a la vez: se une a las consultas en curso de cada clave y consulta el
+     * resto en una sola llamada, que a su vez comparte por clave con las que lleguen después.
+     * Las claves sin valor no aparecen en el mapa.
+     */
+    public Mono<Map<K, V>> executeAll(Collection<K> keys, Function<List<K>, Mono<Map<K, V>>> consulta) {
+        return Mono.defer(() -> {
+            List<K> nuevas = new ArrayList<>();
+            // Quien se une a una clave nueva antes de terminar el reparto espera a que el lote esté completo
+            Sinks.Empty<Void> repartidas = Sinks.empty();
+            Mono<Map<K, V>> lote = repartidas.asMono()
+                    .then(Mono.defer(() -> consulta.apply(nuevas)))
+                    .doOnError(e -> nuevas.forEach(enVuelo::remove))
+                    .doOnSuccess(valores -> retirar(nuevas))
+                    .cache();
+            Map<K, Mono<V>> vuelos = new LinkedHashMap<>();
+            for (K key : keys) {
+                if (vuelos.containsKey(key)) {
+                    continue;
+                }
+                Mono<V> propio = lote.mapNotNull(valores -> valores.get(key));
+                Mono<V> existente = enVuelo.putIfAbsent(key, propio);
+                if (existente != null) {
+                    compartidas.increment();
+                    vuelos.put(key, existente);
+                } else {
+                    lideres.increment();
+                    nuevas.add(key);
+                    vuelos.put(key, propio);
+                }
+            }
+            repartidas.tryEmitEmpty();
+            return Flux.fromIterable(vuelos.entrySet())
+                    .flatMap(vuelo -> vuelo.getValue().map(valor -> Tuples.of(vuelo.getKey(), valor)))
+                    .collectMap(t -> t.getT1(), t -> t.getT2(), LinkedHashMap::new);
+        });
+    }
+
+    private void retirar(List<K> keys) {
+        if (ventana.isZero() || ventana.isNegative()) {
+            keys.forEach(enVuelo::remove);
+        } else {
+            Schedulers.parallel().schedule(() -> keys.forEach(enVuelo::remove), ventana.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private double deduplicacion() {
+        double total = lideres.count() + compartidas.count();
+        return total == 0 ? 0 : compartidas.count() / total;
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.classes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrada del feed de cambios: alta o modificación (con el producto) o baja (tombstone, sin producto).
+ * El token permite retomar el feed justo después de esta entrada.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class CambioProducto {
+    private Long id;
+    private boolean eliminado;
+    private Long version;
+    private LocalDateTime fecha;
+    private String token;
+    private Producto producto;
+}
@@ -0,0 +1,29 @@
+package org.example.classes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Progreso de la reconstrucción de la proyección (actuator /actuator/proyeccion).
+ * pendientes es la suma, entre particiones, de offsets que faltan hasta el objetivo de la fase actual.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class EstadoReconstruccion {
+
+    public enum Fase { INACTIVA, PREPARANDO, CARGANDO, PONIENDO_AL_DIA, INDEXANDO, INTERCAMBIANDO, COMPLETADA, FALLIDA }
+
+    private Fase fase;
+    private Instant desde;
+    private Instant inicio;
+    private Instant fin;
+    private long eventos;
+    private long filas;
+    private long pendientes;
+    private double progreso;
+    private String error;
+}
@@ -0,0 +1,22 @@
+package org.example.classes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class OutboxEvento {
+    private Long id;
+    private String topic;
+    private String tipo;
+    private String payload;
+    private LocalDateTime creadoEn;
+    // Instante del comando original (epoch millis), se reenvía en la cabecera x-comando-ts
+    private Long comandoTs;
+    // Correlación del comando que espera a la proyección, se reenvía en la cabecera x-correlacion
+    private String correlacion;
+}
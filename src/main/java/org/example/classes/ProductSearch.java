@@ -0,0 +1,27 @@
+package org.example.classes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Criterios de GET /api/productos/search. Los filtros nulos no se aplican.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class ProductSearch {
+
+    public enum Orden {
+        ID, PRECIO_ASC, PRECIO_DESC, RELEVANCIA
+    }
+
+    private String texto;
+    private Double precioMin;
+    private Double precioMax;
+    private Integer stockMin;
+    private Orden orden;
+    // Cursor opaco devuelto en X-Next-Cursor por la página anterior
+    private String cursor;
+    private int limit;
+}
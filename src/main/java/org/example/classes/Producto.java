@@ -3,6 +3,7 @@ import lombok.Data;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.relational.core.mapping.Table;
 import java.time.LocalDateTime;
 
@@ -19,4 +20,9 @@ public class Producto {
     private Integer stock;
     private Boolean activo;
     private LocalDateTime fechaCreacion;
+    // Las asigna el trigger trg_productos_version en cada escritura; nunca se envían desde la aplicación
+    @ReadOnlyProperty
+    private Long version;
+    @ReadOnlyProperty
+    private LocalDateTime actualizadoEn;
 }
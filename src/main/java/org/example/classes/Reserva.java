@@ -0,0 +1,21 @@
+package org.example.classes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Unidades de un producto apartadas hasta que se confirman, se liberan o vencen.
+ * Vive en memoria de la réplica que la creó; el id empieza por el de esa réplica.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class Reserva {
+    private String id;
+    private Long productoId;
+    private int cantidad;
+    private Instant expira;
+}
@@ -0,0 +1,172 @@
+package org.example.config;
+
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.example.consumer.ProductBatchConsumer;
+import org.example.events.serde.ProductEventDeserializer;
+import org.example.events.serde.ProductEventSerializer;
+import org.example.producer.ProductProducer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaConsumerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuración adicional de Kafka.
+ * El resto (bootstrap servers, serializadores, grupo) llega desde Spring Cloud Config.
+ */
+@Configuration
+public class KafkaConfig {
+
+    public static final String REINTENTOS_TEMPLATE = "reintentosKafkaTemplate";
+    private static final String DLT = ProductProducer.TOPIC + "-dlt";
+
+    /**
+     * Fábrica de contenedores en modo lote para ProductBatchConsumer.
+     * Hereda la configuración de Spring Boot y confirma los offsets del lote
+     * solo cuando el listener termina sin error.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "productos.consumer.batch.enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Qualifier(REINTENTOS_TEMPLATE) KafkaTemplate<Object, Object> reintentosKafkaTemplate) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setCommonErrorHandler(batchErrorHandler(reintentosKafkaTemplate));
+        return factory;
+    }
+
+    /**
+     * Fábrica del tópico de reintento del modo lote (ProductBatchConsumer.REINTENTO), registro a registro.
+     * Reintenta en el sitio con espera exponencial y, agotados los intentos, publica en product-events-dlt:
+     * la espera solo detiene el tópico de reintento, no product-events.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "productos.consumer.batch.enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchReintentoKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Qualifier(REINTENTOS_TEMPLATE) KafkaTemplate<Object, Object> reintentosKafkaTemplate,
+            @Value("${productos.consumer.reintentos.intentos:4}") int intentos,
+            @Value("${productos.consumer.reintentos.espera-ms:1000}") long espera,
+            @Value("${productos.consumer.reintentos.multiplicador:4}") double multiplicador,
+            @Value("${productos.consumer.reintentos.espera-maxima-ms:60000}") long esperaMaxima) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(false);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        factory.setCommonErrorHandler(reintentoErrorHandler(reintentosKafkaTemplate, intentos, espera, multiplicador, esperaMaxima));
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnExpression("${productos.consumer.batch.enabled:false} and ${productos.consumer.reintentos.crear-topicos:true}")
+    public NewTopic batchReintentoTopic() {
+        return TopicBuilder.name(ProductBatchConsumer.REINTENTO).build();
+    }
+
+    /**
+     * Sin reintentos en el sitio, que detendrían la partición: ProductBatchConsumer señala el registro que falla
+     * (BatchListenerFailedException), se confirman los anteriores y ese se publica en ProductBatchConsumer.REINTENTO;
+     * el lote sigue. Los errores de integridad y los valores ilegibles van directos a product-events-dlt.
+     */
+    static DefaultErrorHandler batchErrorHandler(KafkaTemplate<Object, Object> template) {
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(template,
+                (record, e) -> new TopicPartition(record.value() == null || integridad(e) ? DLT : ProductBatchConsumer.REINTENTO, -1));
+        return new DefaultErrorHandler(recoverer, new FixedBackOff(0L, 0L));
+    }
+
+    // Intentos restantes tras el del lote, con espera exponencial; los errores de integridad no se reintentan
+    static DefaultErrorHandler reintentoErrorHandler(KafkaTemplate<Object, Object> template, int intentos,
+                                                     long espera, double multiplicador, long esperaMaxima) {
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(template,
+                (record, e) -> new TopicPartition(DLT, -1));
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(Math.max(0, intentos - 2));
+        backOff.setInitialInterval(espera);
+        backOff.setMultiplier(multiplicador);
+        backOff.setMaxInterval(esperaMaxima);
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(recoverer, backOff);
+        // El clasificador recorre las causas: también cuenta la integridad envuelta en ListenerExecutionFailedException
+        errorHandler.addNotRetryableExceptions(DataIntegrityViolationException.class, R2dbcDataIntegrityViolationException.class);
+        return errorHandler;
+    }
+
+    private static boolean integridad(Throwable e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof DataIntegrityViolationException || causa instanceof R2dbcDataIntegrityViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plantilla de los tópicos de reintento y las DLT de ProductConsumer y ProductBatchConsumer.
+     * Publica siempre JSON (legible al inspeccionar la DLT; los consumidores leen ambos formatos)
+     * y los valores ilegibles tal cual llegaron, como bytes.
+     */
+    @Bean(REINTENTOS_TEMPLATE)
+    public KafkaTemplate<Object, Object> reintentosKafkaTemplate(ProducerFactory<Object, Object> producerFactory) {
+        JsonSerializer<Object> json = new JsonSerializer<>();
+        Map<Class<?>, Serializer<?>> delegados = new LinkedHashMap<>();
+        delegados.put(byte[].class, new ByteArraySerializer());
+        delegados.put(Object.class, json);
+        DefaultKafkaProducerFactory<Object, Object> factory = new DefaultKafkaProducerFactory<>(
+                producerFactory.getConfigurationProperties(), null, new DelegatingByTypeSerializer(delegados, true));
+        return new KafkaTemplate<>(factory);
+    }
+
+    /**
+     * Con productos.kafka.formato=binario los eventos se publican con ProductEventSerializer.
+     * Activarlo solo cuando todos los consumidores usen ProductEventDeserializer.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "productos.kafka.formato", havingValue = "binario")
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaProducerFactoryCustomizer binaryEventSerializer() {
+        return factory -> ((DefaultKafkaProducerFactory<Object, Object>) factory)
+                .setValueSerializer(new ProductEventSerializer());
+    }
+
+    /**
+     * Los consumidores leen siempre ambos formatos, así se despliegan antes que los productores.
+     * Los valores ilegibles llegan al listener como error en lugar de repetirse sin fin.
+     */
+    @Bean
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaConsumerFactoryCustomizer binaryEventDeserializer() {
+        return factory -> ((DefaultKafkaConsumerFactory<Object, Object>) factory)
+                .setValueDeserializer(new ErrorHandlingDeserializer<>(new ProductEventDeserializer()));
+    }
+}
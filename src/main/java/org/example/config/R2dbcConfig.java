@@ -0,0 +1,130 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Option;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Pools de conexiones a Postgres separados por carga, detrás de un ReadWriteRoutingConnectionFactory:
+ * <ul>
+ *     <li>escritura: consumidores, comandos, outbox y todo lo que no indica otra cosa</li>
+ *     <li>lectura: lecturas HTTP, así un pico de eventos en los consumidores no las deja sin conexión</li>
+ *     <li>replica (solo con productos.r2dbc.replica.url): lecturas que toleran retraso</li>
+ * </ul>
+ * La URL, el usuario y la contraseña son los de spring.r2dbc.*; cada pool se dimensiona con
+ * productos.r2dbc.&lt;pool&gt;.*. Las sentencias preparadas se cachean por conexión hasta
+ * cache-sentencias (acotada: los INSERT/UPDATE multi-fila generan un texto SQL por tamaño de lote).
+ * Spring Boot publica r2dbc.pool.* (idle, pending, acquired...) con tag name=&lt;pool&gt;; aquí se añade
+ * productos.r2dbc.adquisicion, el tiempo de espera hasta obtener una conexión.
+ */
+@Configuration
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class R2dbcConfig {
+
+    private static final Option<Integer> CACHE_SENTENCIAS = Option.valueOf("preparedStatementCacheQueries");
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool escrituraConnectionFactory(R2dbcProperties properties, Environment env) {
+        return pool("escritura", properties.getUrl(), properties, env);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool lecturaConnectionFactory(R2dbcProperties properties, Environment env) {
+        return pool("lectura", properties.getUrl(), properties, env);
+    }
+
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnProperty(name = "productos.r2dbc.replica.url")
+    public ConnectionPool replicaConnectionFactory(R2dbcProperties properties, Environment env,
+                                                   @Value("${productos.r2dbc.replica.url}") String url) {
+        return pool("replica", url, properties, env);
+    }
+
+    // La que usan DatabaseClient, los repositorios y el gestor de transacciones
+    @Bean
+    @Primary
+    public ReadWriteRoutingConnectionFactory connectionFactory(
+            @Qualifier("escrituraConnectionFactory") ConnectionPool escritura,
+            @Qualifier("lecturaConnectionFactory") ConnectionPool lectura,
+            @Qualifier("replicaConnectionFactory") Optional<ConnectionPool> replica,
+            MeterRegistry registry) {
+        Map<Object, Object> destinos = new HashMap<>();
+        destinos.put(ReadWriteRoutingConnectionFactory.ESCRITURA, cronometrado(escritura, "escritura", registry));
+        ConnectionFactory lecturaCronometrada = cronometrado(lectura, "lectura", registry);
+        destinos.put(ReadWriteRoutingConnectionFactory.LECTURA, lecturaCronometrada);
+        destinos.put(ReadWriteRoutingConnectionFactory.REPLICA,
+                replica.map(pool -> cronometrado(pool, "replica", registry)).orElse(lecturaCronometrada));
+        ReadWriteRoutingConnectionFactory routing = new ReadWriteRoutingConnectionFactory();
+        routing.setTargetConnectionFactories(destinos);
+        routing.setDefaultTargetConnectionFactory(destinos.get(ReadWriteRoutingConnectionFactory.ESCRITURA));
+        return routing;
+    }
+
+    private static ConnectionPool pool(String nombre, String url, R2dbcProperties properties, Environment env) {
+        String prefijo = "productos.r2dbc." + nombre + ".";
+        // El pool lo crea esta clase: se ignora r2dbc:pool: en la URL
+        ConnectionFactoryOptions.Builder opciones = ConnectionFactoryOptions.parse(url.replaceFirst("^r2dbc:pool:", "r2dbc:"))
+                .mutate();
+        if (properties.getUsername() != null) {
+            opciones.option(ConnectionFactoryOptions.USER, properties.getUsername());
+        }
+        if (properties.getPassword() != null) {
+            opciones.option(ConnectionFactoryOptions.PASSWORD, properties.getPassword());
+        }
+        properties.getProperties().forEach((clave, valor) -> opciones.option(Option.valueOf(clave), valor));
+        opciones.option(CACHE_SENTENCIAS, env.getProperty("productos.r2dbc.cache-sentencias", Integer.class, 256));
+        ConnectionPoolConfiguration configuracion = ConnectionPoolConfiguration.builder(ConnectionFactories.get(opciones.build()))
+                .name(nombre)
+                .initialSize(env.getProperty(prefijo + "tamano-inicial", Integer.class, 2))
+                .maxSize(env.getProperty(prefijo + "tamano-maximo", Integer.class, 10))
+                .maxAcquireTime(env.getProperty(prefijo + "espera-maxima", Duration.class, Duration.ofSeconds(3)))
+                .maxIdleTime(env.getProperty(prefijo + "ociosidad-maxima", Duration.class, Duration.ofMinutes(10)))
+                .build();
+        return new ConnectionPool(configuracion);
+    }
+
+    private static ConnectionFactory cronometrado(ConnectionFactory pool, String nombre, MeterRegistry registry) {
+        Timer adquisicion = Timer.builder("productos.r2dbc.adquisicion")
+                .description("Espera hasta obtener una conexión del pool")
+                .tag("pool", nombre)
+                .publishPercentileHistogram()
+                .register(registry);
+        return new ConnectionFactory() {
+            @Override
+            public Publisher<? extends Connection> create() {
+                return Mono.defer(() -> {
+                    Timer.Sample muestra = Timer.start(registry);
+                    return Mono.<Connection>from(pool.create()).doOnSuccess(conexion -> muestra.stop(adquisicion));
+                });
+            }
+
+            @Override
+            public ConnectionFactoryMetadata getMetadata() {
+                return pool.getMetadata();
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.config;
+
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Elige el pool de cada conexión según el contexto de Reactor de quien la pide.
+ * Sin indicación se usa el de escritura; las lecturas se marcan con
+ * {@code .contextWrite(ReadWriteRoutingConnectionFactory::lectura)} (o ::replica).
+ * Dentro de una transacción manda el pool con el que empezó.
+ * Las lecturas que se cachean o que responden con el ETag de CatalogVersion usan lectura y no
+ * replica: con retraso de la réplica quedarían filas antiguas en la caché o ETags adelantados.
+ */
+public class ReadWriteRoutingConnectionFactory extends AbstractRoutingConnectionFactory {
+
+    static final String ESCRITURA = "escritura";
+    static final String LECTURA = "lectura";
+    static final String REPLICA = "replica";
+    private static final String CLAVE = ReadWriteRoutingConnectionFactory.class.getName();
+
+    public static Context lectura(Context context) {
+        return context.put(CLAVE, LECTURA);
+    }
+
+    // Lecturas que toleran el retraso de la réplica; sin réplica configurada van al pool de lectura
+    public static Context replica(Context context) {
+        return context.put(CLAVE, REPLICA);
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.just(context.getOrDefault(CLAVE, ESCRITURA)));
+    }
+}
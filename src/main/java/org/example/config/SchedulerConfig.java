@@ -0,0 +1,63 @@
+package org.example.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dónde se ejecuta el trabajo que puede bloquear, para que nunca ocupe el event loop de Netty.
+ * Cada ejecutor admite hilos de plataforma o virtuales (modelo: plataforma | virtual).
+ */
+@Configuration
+public class SchedulerConfig {
+
+    private static final String VIRTUAL = "virtual";
+    private static final int TTL_SEGUNDOS = 60;
+
+    /**
+     * Scheduler donde se invoca kafkaTemplate.send, que puede bloquear (metadatos del tópico,
+     * buffer.memory lleno). Hilos y cola acotados también con hilos virtuales: si se llenan,
+     * la publicación falla de inmediato (503) en lugar de acumular peticiones detrás de un broker caído.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler kafkaProducerScheduler(@Value("${productos.kafka.producer.hilos:16}") int hilos,
+                                            @Value("${productos.kafka.producer.cola:10000}") int cola,
+                                            @Value("${productos.kafka.producer.modelo:plataforma}") String modelo) {
+        return Schedulers.newBoundedElastic(hilos, cola, hilos("kafka-producer-", modelo), TTL_SEGUNDOS);
+    }
+
+    /**
+     * Ejecutor de los hilos de consumo de cada contenedor de listeners (también el de lotes),
+     * con el id del listener en el nombre del hilo. Spring Boot lo aplica a las fábricas
+     * configuradas con ConcurrentKafkaListenerContainerFactoryConfigurer.
+     */
+    @Bean
+    public ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> listenerTaskExecutor(
+            @Value("${productos.consumer.modelo:plataforma}") String modelo) {
+        return container -> {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(container.getListenerId() + "-");
+            executor.setVirtualThreads(VIRTUAL.equalsIgnoreCase(modelo));
+            container.getContainerProperties().setListenerTaskExecutor(executor);
+        };
+    }
+
+    static ThreadFactory hilos(String prefijo, String modelo) {
+        if (VIRTUAL.equalsIgnoreCase(modelo)) {
+            return Thread.ofVirtual().name(prefijo, 0).factory();
+        }
+        AtomicInteger contador = new AtomicInteger();
+        return tarea -> {
+            Thread hilo = new Thread(tarea, prefijo + contador.getAndIncrement());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+    }
+}
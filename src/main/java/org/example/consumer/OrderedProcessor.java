@@ -0,0 +1,71 @@
+package org.example.consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta tareas reactivas en orden estricto por clave y en paralelo entre claves.
+ * Cada clave se asigna siempre al mismo carril; cada carril procesa sus tareas de una en una
+ * (concatMap) y los carriles avanzan en paralelo, así la concurrencia queda acotada
+ * por la cantidad de carriles. Si un carril está lleno, quien envía espera (presión hacia
+ * el poll de Kafka) en lugar de acumular tareas sin límite.
+ */
+@Component
+public class OrderedProcessor {
+
+    private static final long ESPERA_CARRIL_LLENO_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Sinks.Many<Mono<Void>>[] carriles;
+    private final Disposable.Composite suscripciones = Disposables.composite();
+
+    @SuppressWarnings("unchecked")
+    public OrderedProcessor(@Value("${productos.consumer.carriles:32}") int cantidad,
+                            @Value("${productos.consumer.carril-buffer:256}") int buffer) {
+        this.carriles = new Sinks.Many[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            Sinks.Many<Mono<Void>> carril = Sinks.many().unicast().onBackpressureBuffer(Queues.<Mono<Void>>get(buffer).get());
+            carriles[i] = carril;
+            // El error de una tarea se entrega a quien la envió; el carril sigue con la siguiente
+            suscripciones.add(carril.asFlux()
+                    .concatMap(tarea -> tarea.onErrorResume(e -> Mono.empty()))
+                    .subscribe());
+        }
+    }
+
+    public <T> Mono<T> submit(Object key, Supplier<Mono<T>> tarea) {
+        return Mono.create(sink -> {
+            Mono<Void> ejecucion = Mono.defer(tarea)
+                    .doOnNext(sink::success)
+                    .doOnError(sink::error)
+                    .doOnSuccess(valor -> sink.success())
+                    .then();
+            carril(key).emitNext(ejecucion, (signal, resultado) -> {
+                if (resultado == Sinks.EmitResult.FAIL_OVERFLOW) {
+                    LockSupport.parkNanos(ESPERA_CARRIL_LLENO_NANOS);
+                    return true;
+                }
+                return resultado == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+            });
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        suscripciones.dispose();
+    }
+
+    private Sinks.Many<Mono<Void>> carril(Object key) {
+        return carriles[Math.floorMod(Objects.hashCode(key), carriles.length)];
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Posición de un evento en product-events (partición y offset). Cada fila de productos guarda la del
+ * último evento aplicado y las escrituras no aplican uno anterior (ProductRepository.POSTERIOR).
+ */
+public record PosicionEvento(int particion, long offset) {
+
+    /**
+     * Posición del registro. Los de los tópicos de reintento y de la DLT llevan la original en cabeceras;
+     * se toma la primera, la que añadió el primer fallo.
+     */
+    public static PosicionEvento de(ConsumerRecord<?, ?> record) {
+        byte[] particion = primera(record, KafkaHeaders.DLT_ORIGINAL_PARTITION);
+        byte[] offset = primera(record, KafkaHeaders.DLT_ORIGINAL_OFFSET);
+        if (particion != null && particion.length == Integer.BYTES && offset != null && offset.length == Long.BYTES) {
+            return new PosicionEvento(ByteBuffer.wrap(particion).getInt(), ByteBuffer.wrap(offset).getLong());
+        }
+        return new PosicionEvento(record.partition(), record.offset());
+    }
+
+    private static byte[] primera(ConsumerRecord<?, ?> record, String nombre) {
+        Iterator<Header> headers = record.headers().headers(nombre).iterator();
+        return headers.hasNext() ? headers.next().value() : null;
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.consumer;
+
+import lombok.Getter;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.classes.Producto;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductEvent;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.ProductUpdatedEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resultado de fusionar un lote de eventos por id de producto.
+ * Cada id termina en un único estado (alta completa, actualización, solo stock o borrado),
+ * aplicando los eventos en el orden recibido: el último en escribir gana y un borrado
+ * descarta lo anterior del mismo id.
+ */
+@Getter
+public class ProductBatch {
+
+    // Altas sin id: la base genera el id, no se pueden fusionar
+    private final List<Producto> inserts = new ArrayList<>();
+    // Altas con id (INSERT ... ON CONFLICT)
+    private final Map<Long, Producto> upserts = new LinkedHashMap<>();
+    // Actualizaciones de productos existentes
+    private final Map<Long, Producto> updates = new LinkedHashMap<>();
+    // Cambios de solo stock
+    private final Map<Long, Integer> stocks = new LinkedHashMap<>();
+    private final Set<Long> deletes = new LinkedHashSet<>();
+    // Posición del último evento de cada id (solo con coalesceRegistros)
+    private final Map<Long, PosicionEvento> posiciones = new HashMap<>();
+
+    public static ProductBatch coalesce(List<?> eventos) {
+        ProductBatch batch = new ProductBatch();
+        eventos.forEach(batch::aplicar);
+        return batch;
+    }
+
+    // Con la posición en product-events del último evento de cada producto, que se guarda con la fila
+    public static ProductBatch coalesceRegistros(List<? extends ConsumerRecord<?, ?>> registros) {
+        ProductBatch batch = new ProductBatch();
+        for (ConsumerRecord<?, ?> registro : registros) {
+            batch.aplicar(registro.value());
+            if (registro.value() instanceof ProductEvent e && e.getId() != null) {
+                batch.posiciones.put(e.getId(), PosicionEvento.de(registro));
+            }
+        }
+        return batch;
+    }
+
+    private void aplicar(Object evento) {
+        if (evento instanceof ProductCreatedEvent e) {
+            created(e);
+        } else if (evento instanceof ProductUpdatedEvent e) {
+            updated(e);
+        } else if (evento instanceof ProductStockUpdatedEvent e) {
+            stockUpdated(e.getId(), e.getStock());
+        } else if (evento instanceof ProductStockAdjustedEvent e) {
+            // Lleva el stock resultante: solo lo recibe la reconstrucción (ProjectionRebuilder)
+            stockUpdated(e.getId(), e.getStock());
+        } else if (evento instanceof ProductDeletedEvent e) {
+            deleted(e.getId());
+        }
+    }
+
+    public boolean isEmpty() {
+        return inserts.isEmpty() && upserts.isEmpty() && updates.isEmpty() && stocks.isEmpty() && deletes.isEmpty();
+    }
+
+    public int size() {
+        return inserts.size() + upserts.size() + updates.size() + stocks.size() + deletes.size();
+    }
+
+    // Ids afectados por el lote (para invalidar cachés)
+    public Set<Long> ids() {
+        Set<Long> ids = new LinkedHashSet<>(upserts.keySet());
+        ids.addAll(updates.keySet());
+        ids.addAll(stocks.keySet());
+        ids.addAll(deletes);
+        return ids;
+    }
+
+    private void created(ProductCreatedEvent event) {
+        Producto producto = new Producto();
+        producto.setId(event.getId());
+        producto.setNombre(event.getNombre());
+        producto.setDescripcion(event.getDescripcion());
+        producto.setPrecio(event.getPrecio());
+        producto.setStock(event.getStock());
+        producto.setActivo(true);
+        producto.setFechaCreacion(LocalDateTime.now());
+        if (event.getId() == null) {
+            inserts.add(producto);
+            return;
+        }
+        clear(event.getId());
+        upserts.put(event.getId(), producto);
+    }
+
+    private void updated(ProductUpdatedEvent event) {
+        Long id = event.getId();
+        if (deletes.contains(id)) {
+            return;
+        }
+        Producto producto = upserts.get(id);
+        if (producto == null) {
+            // Un cambio de solo stock anterior se conserva si la actualización no trae stock
+            Integer stock = stocks.remove(id);
+            producto = updates.computeIfAbsent(id, key -> {
+                Producto nuevo = new Producto();
+                nuevo.setId(key);
+                nuevo.setStock(stock);
+                return nuevo;
+            });
+        }
+        producto.setNombre(event.getNombre());
+        producto.setDescripcion(event.getDescripcion());
+        producto.setPrecio(event.getPrecio());
+        // Sin stock la actualización no lo modifica
+        if (event.getStock() != null) {
+            producto.setStock(event.getStock());
+        }
+    }
+
+    private void stockUpdated(Long id, Integer stock) {
+        if (deletes.contains(id)) {
+            return;
+        }
+        Producto producto = upserts.containsKey(id) ? upserts.get(id) : updates.get(id);
+        if (producto != null) {
+            producto.setStock(stock);
+        } else {
+            stocks.put(id, stock);
+        }
+    }
+
+    private void deleted(Long id) {
+        clear(id);
+        deletes.add(id);
+    }
+
+    private void clear(Long id) {
+        upserts.remove(id);
+        updates.remove(id);
+        stocks.remove(id);
+        deletes.remove(id);
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.metrics.ProductMetrics;
+import org.example.notification.PendingProjections;
+import org.example.producer.ProductProducer;
+import org.example.repository.ProductBatchWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Consumidor en modo lote (productos.consumer.batch.enabled=true), alternativo a ProductConsumer.
+ * Recibe el lote de cada poll de product-events, lo fusiona por id de producto
+ * y lo aplica con sentencias multi-fila. El listener espera a que el lote termine,
+ * así los offsets solo se confirman cuando la proyección ya está escrita.
+ * Si el lote falla se aplica registro a registro, en el orden del poll, para señalar el que falla:
+ * los anteriores se confirman y ese pasa a REINTENTO (o a product-events-dlt si no tiene remedio), sin
+ * detener la partición. Cada fila guarda la posición del evento y la escritura comparte las guardas de
+ * ProductConsumer: un reintento no pisa eventos posteriores ni recrea un producto eliminado.
+ */
+@Component
+@ConditionalOnProperty(name = "productos.consumer.batch.enabled", havingValue = "true")
+public class ProductBatchConsumer {
+
+    // Tópico de reintento del modo lote; conserva la posición original en cabeceras (PosicionEvento)
+    public static final String REINTENTO = ProductProducer.TOPIC + "-reintento-lote";
+
+    private final ProductBatchWriter batchWriter;
+    private final ProductCache cache;
+    private final ProductMetrics metrics;
+    private final PendingProjections pendingProjections;
+    private final CatalogVersion catalogVersion;
+    private final Duration timeout;
+
+    public ProductBatchConsumer(ProductBatchWriter batchWriter, ProductCache cache, ProductMetrics metrics,
+                                PendingProjections pendingProjections, CatalogVersion catalogVersion,
+                                @Value("${productos.consumer.batch.timeout:30s}") Duration timeout) {
+        this.batchWriter = batchWriter;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.pendingProjections = pendingProjections;
+        this.catalogVersion = catalogVersion;
+        this.timeout = timeout;
+    }
+
+    @KafkaListener(topics = ProductProducer.TOPIC, groupId = "product-group", containerFactory = "batchKafkaListenerContainerFactory")
+    public void consume(List<ConsumerRecord<String, Object>> records) {
+        // El poll trae cada partición en orden de offset: los eventos de un producto ya vienen ordenados.
+        // Los ajustes de stock son informativos (ya aplicados en productos)
+        List<ConsumerRecord<String, Object>> eventos = records.stream()
+                .filter(record -> !(record.value() instanceof ProductStockAdjustedEvent))
+                .toList();
+        ProductBatch batch = ProductBatch.coalesceRegistros(eventos);
+        metrics.recordBatch(records.size(), batch.size());
+        try {
+            metrics.timeConsumer("batch", batchWriter.apply(batch)).block(timeout);
+        } catch (RuntimeException e) {
+            metrics.recordConsumerError("batch", e);
+            aplicarUnoAUno(records);
+            return;
+        }
+        batch.ids().forEach(cache::invalidate);
+        catalogVersion.marcar();
+        completar(records);
+    }
+
+    private void aplicarUnoAUno(List<ConsumerRecord<String, Object>> records) {
+        try {
+            for (ConsumerRecord<String, Object> record : records) {
+                if (record.value() == null) {
+                    // Valor ilegible (ErrorHandlingDeserializer): la DLT recibe los bytes originales
+                    throw new BatchListenerFailedException("Evento ilegible en " + record.topic(), record);
+                }
+                if (record.value() instanceof ProductStockAdjustedEvent) {
+                    continue;
+                }
+                ProductBatch uno = ProductBatch.coalesceRegistros(List.of(record));
+                try {
+                    metrics.timeConsumer(record.topic(), batchWriter.apply(uno)).block(timeout);
+                } catch (RuntimeException e) {
+                    metrics.recordConsumerError(record.topic(), e);
+                    throw new BatchListenerFailedException("Evento sin aplicar en " + record.topic(), e, record);
+                }
+                uno.ids().forEach(cache::invalidate);
+                completar(List.of(record));
+            }
+        } finally {
+            catalogVersion.marcar();
+        }
+    }
+
+    /**
+     * Registros que fallaron en un lote, uno a uno y con espera exponencial en el sitio
+     * (batchReintentoKafkaListenerContainerFactory); agotados los intentos van a product-events-dlt.
+     */
+    @KafkaListener(topics = REINTENTO, groupId = "product-group", containerFactory = "batchReintentoKafkaListenerContainerFactory")
+    public void consumeReintento(ConsumerRecord<String, Object> record) {
+        if (record.value() instanceof ProductStockAdjustedEvent) {
+            return;
+        }
+        ProductBatch uno = ProductBatch.coalesceRegistros(List.of(record));
+        try {
+            metrics.timeConsumer(record.topic(), batchWriter.apply(uno)).block(timeout);
+        } catch (RuntimeException e) {
+            metrics.recordConsumerError(record.topic(), e);
+            throw e;
+        }
+        uno.ids().forEach(cache::invalidate);
+        catalogVersion.marcar();
+        completar(List.of(record));
+    }
+
+    private void completar(List<ConsumerRecord<String, Object>> records) {
+        for (ConsumerRecord<String, Object> record : records) {
+            Header comandoTs = record.headers().lastHeader(ProductProducer.COMANDO_TS_HEADER);
+            metrics.recordVisibilityLag(record.topic(), comandoTs != null ? comandoTs.value() : null);
+            Header correlacion = record.headers().lastHeader(ProductProducer.CORRELACION_HEADER);
+            pendingProjections.complete(correlacion != null ? correlacion.value() : null);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.ProductUpdatedEvent;
+import org.example.notification.PendingProjections;
+import org.example.notification.StockNotifier;
+import org.example.producer.ProductProducer;
+import org.example.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantiene coherente la caché local de cada réplica.
+ * ProductConsumer usa el grupo compartido "product-group" y solo una réplica recibe cada evento;
+ * este listener usa un grupo propio por instancia para que todas las réplicas vean todos los eventos
+ * e invaliden su entrada: la siguiente lectura trae la fila con su versión (y su ETag).
+ * El evento puede llegar antes de que la proyección lo aplique, así que se invalida otra vez pasado
+ * productos.cache.reinvalidacion, por si entretanto una lectura cacheó la fila anterior.
+ * Por el mismo motivo marca como sucia la versión del catálogo.
+ * También alimenta el stream SSE de cambios de stock de la réplica con el stock que guardó la proyección
+ * (neto de lo arrendado, el mismo que devuelve GET /api/productos/{id}), no el pedido en el evento:
+ * consulta la fila hasta que refleja la posición del evento, durante productos.stock-eventos.espera-proyeccion.
+ * Con varias réplicas el evento de un comando con Prefer: wait-for-projection lo puede aplicar el consumidor de
+ * otra: si la correlación espera en esta réplica, se consulta la base hasta verlo aplicado y se completa la espera.
+ */
+@Component
+@KafkaListener(topics = ProductProducer.TOPIC, groupId = "#{__listener.grupo}", containerFactory = "kafkaListenerContainerFactory",
+        properties = "auto.offset.reset=latest")
+public class ProductCacheSyncListener {
+
+    private static final Duration INTERVALO = Duration.ofMillis(100);
+
+    private final ProductRepository productRepository;
+    private final ProductCache cache;
+    private final PendingProjections pendingProjections;
+    private final StockNotifier stockNotifier;
+    private final CatalogVersion catalogVersion;
+    private final Duration reinvalidacion;
+    private final Duration esperaProyeccion;
+    private final String grupo = "product-cache-" + UUID.randomUUID();
+
+    public ProductCacheSyncListener(ProductRepository productRepository, ProductCache cache, StockNotifier stockNotifier,
+                                    CatalogVersion catalogVersion, PendingProjections pendingProjections,
+                                    @Value("${productos.cache.reinvalidacion:2s}") Duration reinvalidacion,
+                                    @Value("${productos.stock-eventos.espera-proyeccion:5s}") Duration esperaProyeccion) {
+        this.productRepository = productRepository;
+        this.cache = cache;
+        this.stockNotifier = stockNotifier;
+        this.catalogVersion = catalogVersion;
+        this.pendingProjections = pendingProjections;
+        this.reinvalidacion = reinvalidacion;
+        this.esperaProyeccion = esperaProyeccion;
+    }
+
+    public String getGrupo() {
+        return grupo;
+    }
+
+    @KafkaHandler
+    public void onProductCreated(ProductCreatedEvent event, ConsumerRecord<?, ?> record) {
+        if (event.getId() != null) {
+            invalidar(event.getId());
+        }
+        completarPendiente(event.getId(), record).subscribe();
+        catalogVersion.marcar();
+    }
+
+    @KafkaHandler
+    public void onProductUpdated(ProductUpdatedEvent event, ConsumerRecord<?, ?> record) {
+        invalidar(event.getId());
+        if (event.getStock() != null) {
+            publicarGuardado(event.getId(), record).subscribe();
+        }
+        completarPendiente(event.getId(), record).subscribe();
+        catalogVersion.marcar();
+    }
+
+    @KafkaHandler
+    public void onProductDeleted(ProductDeletedEvent event, ConsumerRecord<?, ?> record) {
+        invalidar(event.getId());
+        completarPendiente(event.getId(), record).subscribe();
+        catalogVersion.marcar();
+    }
+
+    @KafkaHandler
+    public void onProductStockUpdated(ProductStockUpdatedEvent event, ConsumerRecord<?, ?> record) {
+        invalidar(event.getId());
+        publicarGuardado(event.getId(), record).subscribe();
+        completarPendiente(event.getId(), record).subscribe();
+        catalogVersion.marcar();
+    }
+
+    // Ajuste ya aplicado en la base: basta con invalidar una vez, y el evento lleva el stock guardado
+    @KafkaHandler
+    public void onProductStockAdjusted(ProductStockAdjustedEvent event) {
+        cache.invalidate(event.getId());
+        stockNotifier.publish(event.getId(), event.getStock());
+        catalogVersion.marcar();
+    }
+
+    // Stock guardado por la proyección al aplicar el evento (o uno posterior). Si no lo aplica a tiempo
+    // (falla, va al reintento o se descarta por antiguo) no se publica nada
+    Mono<Void> publicarGuardado(Long id, ConsumerRecord<?, ?> record) {
+        if (id == null) {
+            return Mono.empty();
+        }
+        PosicionEvento posicion = PosicionEvento.de(record);
+        int intentos = (int) Math.max(1, esperaProyeccion.toMillis() / INTERVALO.toMillis());
+        return Mono.defer(() -> productRepository.aplicado(id, posicion.particion(), posicion.offset()))
+                .repeatWhenEmpty(intentos, vacios -> vacios.delayElements(INTERVALO))
+                .doOnNext(producto -> stockNotifier.publish(id, producto.getStock()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    // Solo si la correlación del registro espera en esta réplica; se deja de consultar cuando otro la
+    // completa (el consumidor local) o vence su plazo
+    Mono<Void> completarPendiente(Long id, ConsumerRecord<?, ?> record) {
+        Header cabecera = record.headers().lastHeader(ProductProducer.CORRELACION_HEADER);
+        byte[] correlacion = cabecera != null ? cabecera.value() : null;
+        if (id == null || !pendingProjections.pendiente(correlacion)) {
+            return Mono.empty();
+        }
+        PosicionEvento posicion = PosicionEvento.de(record);
+        return Mono.defer(() -> productRepository.proyectado(id, posicion.particion(), posicion.offset()))
+                .filter(Boolean::booleanValue)
+                .repeatWhenEmpty(vacios -> vacios.delayElements(INTERVALO)
+                        .takeWhile(n -> pendingProjections.pendiente(correlacion)))
+                .doOnNext(proyectado -> pendingProjections.complete(correlacion))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private void invalidar(Long id) {
+        cache.invalidate(id);
+        if (!reinvalidacion.isZero()) {
+            Schedulers.parallel().schedule(() -> cache.invalidate(id), reinvalidacion.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
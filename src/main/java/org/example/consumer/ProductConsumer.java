@@ -1,63 +1,216 @@
 package org.example.consumer;
 
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
 import org.example.events.ProductCreatedEvent;
 import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductStockAdjustedEvent;
 import org.example.events.ProductStockUpdatedEvent;
 import org.example.events.ProductUpdatedEvent;
 import org.example.classes.Producto;
+import org.example.config.KafkaConfig;
+import org.example.exception.ProductoPendienteException;
+import org.example.metrics.ProductMetrics;
+import org.example.notification.PendingProjections;
+import org.example.producer.ProductProducer;
 import org.example.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.DltHandler;
+import org.springframework.kafka.annotation.KafkaHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
+/**
+ * Aplica los eventos de producto a la proyección.
+ * Todos llegan por el tópico product-events con el id como clave: los de un producto están en una
+ * sola partición y en el orden en que se publicaron, sea cual sea su tipo.
+ * OrderedProcessor los aplica en orden por producto y en paralelo entre productos; los
+ * handlers devuelven Mono y spring-kafka confirma cada offset cuando su escritura termina.
+ * Al terminar cada escritura se completa el comando que la espera (cabecera x-correlacion).
+ * Un evento que falla no detiene la partición: se publica en el tópico de reintento
+ * (&lt;tópico&gt;-reintento-N, con espera exponencial) y, agotados los intentos, en &lt;tópico&gt;-dlt con
+ * el valor original y la excepción en cabeceras. Los errores de integridad (CHECK stock &gt;= 0,
+ * NOT NULL) y los valores ilegibles no se reintentan: van directos a la DLT.
+ * Un reintento puede llegar después de eventos posteriores del mismo producto: cada fila guarda la
+ * posición en product-events del último evento aplicado y no se aplica uno anterior (en los tópicos de
+ * reintento y en la DLT cuenta la posición original, de sus cabeceras). Un alta tampoco recrea un
+ * producto ya eliminado. Una actualización que no encuentra su producto, si este nunca existió,
+ * pasa al reintento: su alta puede estar todavía en un tópico de reintento.
+ */
 @Component
+@ConditionalOnProperty(name = "productos.consumer.batch.enabled", havingValue = "false", matchIfMissing = true)
+@KafkaListener(topics = ProductProducer.TOPIC, groupId = "product-group", containerFactory = "kafkaListenerContainerFactory")
+@RetryableTopic(attempts = "${productos.consumer.reintentos.intentos:4}",
+        backoff = @Backoff(delayExpression = "${productos.consumer.reintentos.espera-ms:1000}",
+                multiplierExpression = "${productos.consumer.reintentos.multiplicador:4}",
+                maxDelayExpression = "${productos.consumer.reintentos.espera-maxima-ms:60000}"),
+        retryTopicSuffix = "-reintento", dltTopicSuffix = "-dlt",
+        topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+        exclude = {DataIntegrityViolationException.class, R2dbcDataIntegrityViolationException.class},
+        traversingCauses = "true",
+        autoCreateTopics = "${productos.consumer.reintentos.crear-topicos:true}",
+        kafkaTemplate = KafkaConfig.REINTENTOS_TEMPLATE)
 public class ProductConsumer {
 
+    private static final Logger log = LoggerFactory.getLogger(ProductConsumer.class);
+
     private final ProductRepository productRepository;
+    private final ProductCache cache;
+    private final ProductMetrics metrics;
+    private final OrderedProcessor orderedProcessor;
+    private final PendingProjections pendingProjections;
+    private final CatalogVersion catalogVersion;
 
-    public ProductConsumer(ProductRepository productRepository) {
+    public ProductConsumer(ProductRepository productRepository, ProductCache cache, ProductMetrics metrics,
+                           OrderedProcessor orderedProcessor, PendingProjections pendingProjections,
+                           CatalogVersion catalogVersion) {
         this.productRepository = productRepository;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.orderedProcessor = orderedProcessor;
+        this.pendingProjections = pendingProjections;
+        this.catalogVersion = catalogVersion;
     }
 
-    @KafkaListener(topics = "product-created", groupId = "product-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeProductCreatedEvent(ProductCreatedEvent event) {
-        Producto producto = new Producto();
-        producto.setId(event.getId());
-        producto.setNombre(event.getNombre());
-        producto.setDescripcion(event.getDescripcion());
-        producto.setPrecio(event.getPrecio());
-        producto.setStock(event.getStock());
-        producto.setActivo(true);
-        producto.setFechaCreacion(LocalDateTime.now());
-        productRepository.save(producto).subscribe();
-    }
-
-    @KafkaListener(topics = "product-updated", groupId = "product-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeProductUpdatedEvent(ProductUpdatedEvent event) {
-        productRepository.findById(event.getId())
-                .flatMap(existing -> {
-                    existing.setNombre(event.getNombre());
-                    existing.setDescripcion(event.getDescripcion());
-                    existing.setPrecio(event.getPrecio());
-                    existing.setStock(event.getStock());
-                    return productRepository.save(existing);
-                })
-                .subscribe();
+    @KafkaHandler
+    public Mono<Void> consumeProductCreatedEvent(ProductCreatedEvent event, ConsumerRecord<?, ?> record,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = ProductProducer.COMANDO_TS_HEADER, required = false) byte[] comandoTs,
+            @Header(name = ProductProducer.CORRELACION_HEADER, required = false) byte[] correlacion) {
+        return process(topic, event.getId(), () -> {
+            // Con id asignado por el servicio: upsert, idempotente si el evento se reentrega
+            if (event.getId() != null) {
+                PosicionEvento posicion = PosicionEvento.de(record);
+                return productRepository.upsert(event.getId(), event.getNombre(), event.getDescripcion(),
+                                event.getPrecio(), event.getStock(), posicion.particion(), posicion.offset())
+                        .doOnNext(this::aplicado)
+                        .switchIfEmpty(descartado(topic, event.getId(), posicion));
+            }
+            Producto producto = new Producto();
+            producto.setId(event.getId());
+            producto.setNombre(event.getNombre());
+            producto.setDescripcion(event.getDescripcion());
+            producto.setPrecio(event.getPrecio());
+            producto.setStock(event.getStock());
+            producto.setActivo(true);
+            producto.setFechaCreacion(LocalDateTime.now());
+            // save devuelve la entidad enviada, sin la versión del trigger
+            return productRepository.save(producto).doOnNext(guardado -> {
+                cache.invalidate(guardado.getId());
+                catalogVersion.marcar();
+            });
+        }, comandoTs, correlacion);
+    }
+
+    @KafkaHandler
+    public Mono<Void> consumeProductUpdatedEvent(ProductUpdatedEvent event, ConsumerRecord<?, ?> record,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = ProductProducer.COMANDO_TS_HEADER, required = false) byte[] comandoTs,
+            @Header(name = ProductProducer.CORRELACION_HEADER, required = false) byte[] correlacion) {
+        PosicionEvento posicion = PosicionEvento.de(record);
+        return process(topic, event.getId(), () -> productRepository.update(event.getId(), event.getNombre(),
+                        event.getDescripcion(), event.getPrecio(), event.getStock(), posicion.particion(), posicion.offset())
+                .doOnNext(this::aplicado)
+                .switchIfEmpty(sinFila(topic, event.getId(), posicion)), comandoTs, correlacion);
+    }
+
+    @KafkaHandler
+    public Mono<Void> consumeProductDeletedEvent(ProductDeletedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = ProductProducer.COMANDO_TS_HEADER, required = false) byte[] comandoTs,
+            @Header(name = ProductProducer.CORRELACION_HEADER, required = false) byte[] correlacion) {
+        return process(topic, event.getId(), () -> productRepository.deleteById(event.getId())
+                .doFinally(signal -> {
+                    cache.invalidate(event.getId());
+                    catalogVersion.marcar();
+                }), comandoTs, correlacion);
+    }
+
+    @KafkaHandler
+    public Mono<Void> consumeProductStockUpdatedEvent(ProductStockUpdatedEvent event, ConsumerRecord<?, ?> record,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = ProductProducer.COMANDO_TS_HEADER, required = false) byte[] comandoTs,
+            @Header(name = ProductProducer.CORRELACION_HEADER, required = false) byte[] correlacion) {
+        PosicionEvento posicion = PosicionEvento.de(record);
+        return process(topic, event.getId(), () -> productRepository.updateStock(event.getId(), event.getStock(),
+                        posicion.particion(), posicion.offset())
+                .doOnNext(this::aplicado)
+                .switchIfEmpty(sinFila(topic, event.getId(), posicion)), comandoTs, correlacion);
+    }
+
+    // Informativo: el ajuste ya está aplicado en productos cuando se publica
+    @KafkaHandler
+    public void consumeProductStockAdjustedEvent(ProductStockAdjustedEvent event) {
+    }
+
+    // Agotados los reintentos (o sin reintento posible): queda en la DLT para revisarlo y reinyectarlo
+    @DltHandler
+    public void consumeDeadLetter(ConsumerRecord<?, ?> record) {
+        String topic = cabecera(record, KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic());
+        String excepcion = cabecera(record, KafkaHeaders.DLT_EXCEPTION_FQCN, "desconocida");
+        metrics.recordDeadLetter(topic, excepcion.substring(excepcion.lastIndexOf('.') + 1));
+        log.error("Evento sin aplicar en la proyección: topic={} clave={} offset={} excepcion={} mensaje={}",
+                topic, record.key(), cabecera(record, KafkaHeaders.DLT_ORIGINAL_OFFSET, "?"), excepcion,
+                cabecera(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE, ""));
+    }
+
+    private static String cabecera(ConsumerRecord<?, ?> record, String nombre, String defecto) {
+        org.apache.kafka.common.header.Header header = record.headers().lastHeader(nombre);
+        if (header == null) {
+            return defecto;
+        }
+        // El offset original va como long binario
+        if (KafkaHeaders.DLT_ORIGINAL_OFFSET.equals(nombre) && header.value().length == Long.BYTES) {
+            return Long.toString(ByteBuffer.wrap(header.value()).getLong());
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    // Actualización sin fila: si el producto ya existió se descarta (eliminado o con un evento posterior
+    // aplicado); si no, falla y pasa al reintento, para aplicarse después de su alta
+    private <T> Mono<T> sinFila(String topic, Long id, PosicionEvento posicion) {
+        return Mono.defer(() -> productRepository.conocido(id))
+                .flatMap(conocido -> conocido
+                        ? this.<T>descartado(topic, id, posicion)
+                        : Mono.error(new ProductoPendienteException(id)));
+    }
+
+    // Sin fila: ya se eliminó o la fila refleja un evento posterior
+    private <T> Mono<T> descartado(String topic, Long id, PosicionEvento posicion) {
+        return Mono.fromRunnable(() -> log.debug("Evento sin efecto en la proyección: topic={} id={} posicion={}",
+                topic, id, posicion));
     }
 
-    @KafkaListener(topics = "product-deleted", groupId = "product-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeProductDeletedEvent(ProductDeletedEvent event) {
-        productRepository.deleteById(event.getId()).subscribe();
+    // Fila devuelta por la base, con la versión asignada por el trigger. La versión del catálogo se relee:
+    // la de la fila no sirve de ETag (CatalogVersion)
+    private void aplicado(Producto producto) {
+        cache.put(producto);
+        catalogVersion.marcar();
     }
 
-    @KafkaListener(topics = "product-stock-updated", groupId = "product-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeProductStockUpdatedEvent(ProductStockUpdatedEvent event) {
-        productRepository.findById(event.getId())
-                .flatMap(existing -> {
-                    existing.setStock(event.getStock());
-                    return productRepository.save(existing);
+    // La escritura se crea dentro del carril, para que lea el estado que dejó el evento anterior del mismo producto
+    private Mono<Void> process(String topic, Long id, Supplier<Mono<?>> escritura, byte[] comandoTs, byte[] correlacion) {
+        return orderedProcessor.submit(id, () -> metrics.timeConsumer(topic, Mono.defer(escritura)).then())
+                .doOnSuccess(v -> {
+                    metrics.recordVisibilityLag(topic, comandoTs);
+                    pendingProjections.complete(correlacion);
                 })
-                .subscribe();
+                .doOnError(e -> metrics.recordConsumerError(topic, e));
     }
 }
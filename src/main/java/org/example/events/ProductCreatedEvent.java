@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class ProductCreatedEvent {
+public class ProductCreatedEvent implements ProductEvent {
     private Long id;
     private String nombre;
     private String descripcion;
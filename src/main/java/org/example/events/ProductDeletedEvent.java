@@ -7,6 +7,6 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class ProductDeletedEvent {
+public class ProductDeletedEvent implements ProductEvent {
     private Long id;
 }
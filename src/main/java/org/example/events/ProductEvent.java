@@ -0,0 +1,9 @@
+package org.example.events;
+
+/**
+ * Evento sobre un producto. El id se usa como clave del registro en Kafka,
+ * así todos los eventos de un mismo producto van a la misma partición.
+ */
+public interface ProductEvent {
+    Long getId();
+}
@@ -0,0 +1,18 @@
+package org.example.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ajuste relativo de stock ya aplicado en la base (cantidad positiva o negativa).
+ * Es informativo: la proyección no lo vuelve a aplicar.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductStockAdjustedEvent implements ProductEvent {
+    private Long id;
+    private Integer cantidad;
+    private Integer stock;
+}
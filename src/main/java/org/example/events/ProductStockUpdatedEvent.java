@@ -7,7 +7,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class ProductStockUpdatedEvent {
+public class ProductStockUpdatedEvent implements ProductEvent {
     private Long id;
     private Integer stock;
 }
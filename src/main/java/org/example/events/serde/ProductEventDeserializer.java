@@ -0,0 +1,37 @@
+package org.example.events.serde;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Lee eventos en formato binario (primer byte 0x00) y delega el resto en JsonDeserializer,
+ * configurado con las mismas propiedades del consumidor. Así lee ambos formatos durante
+ * el cambio de productores, y puede desplegarse antes que ellos.
+ */
+public class ProductEventDeserializer implements Deserializer<Object> {
+
+    private final JsonDeserializer<Object> json = new JsonDeserializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return ProductEventFormat.isBinary(data) ? ProductEventFormat.decode(data) : json.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        return ProductEventFormat.isBinary(data) ? ProductEventFormat.decode(data) : json.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
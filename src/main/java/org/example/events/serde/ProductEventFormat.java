@@ -0,0 +1,245 @@
+package org.example.events.serde;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductEvent;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.ProductUpdatedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Formato binario de los eventos de producto.
+ * <pre>
+ * magic (0x00) | versión | tipo | máscara de campos presentes | campos presentes en orden
+ * </pre>
+ * Enteros como varint zigzag, precio como double de 8 bytes big-endian y textos como
+ * longitud varint + UTF-8. Ningún JSON empieza con 0x00, así el lector distingue ambos formatos.
+ * Un cambio de campos debe subir VERSION y mantener la lectura de las versiones anteriores.
+ */
+final class ProductEventFormat {
+
+    static final byte MAGIC = 0x00;
+    static final byte VERSION = 1;
+
+    static final byte CREATED = 1;
+    static final byte UPDATED = 2;
+    static final byte DELETED = 3;
+    static final byte STOCK_UPDATED = 4;
+    static final byte STOCK_ADJUSTED = 5;
+
+    private ProductEventFormat() {
+    }
+
+    /** Devuelve null si el objeto no es un evento con formato binario. */
+    static byte[] encode(Object event) {
+        if (event instanceof ProductCreatedEvent e) {
+            return producto(CREATED, e.getId(), e.getNombre(), e.getDescripcion(), e.getPrecio(), e.getStock());
+        }
+        if (event instanceof ProductUpdatedEvent e) {
+            return producto(UPDATED, e.getId(), e.getNombre(), e.getDescripcion(), e.getPrecio(), e.getStock());
+        }
+        if (event instanceof ProductDeletedEvent e) {
+            Salida out = cabecera(DELETED, mascara(e.getId()));
+            out.varLong(e.getId());
+            return out.bytes();
+        }
+        if (event instanceof ProductStockUpdatedEvent e) {
+            Salida out = cabecera(STOCK_UPDATED, mascara(e.getId(), e.getStock()));
+            out.varLong(e.getId());
+            out.varInt(e.getStock());
+            return out.bytes();
+        }
+        if (event instanceof ProductStockAdjustedEvent e) {
+            Salida out = cabecera(STOCK_ADJUSTED, mascara(e.getId(), e.getCantidad(), e.getStock()));
+            out.varLong(e.getId());
+            out.varInt(e.getCantidad());
+            out.varInt(e.getStock());
+            return out.bytes();
+        }
+        return null;
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    static ProductEvent decode(byte[] data) {
+        Entrada in = new Entrada(data);
+        try {
+            in.pos = 1;
+            byte version = in.readByte();
+            if (version < 1 || version > VERSION) {
+                throw new SerializationException("Versión de evento no soportada: " + version);
+            }
+            byte tipo = in.readByte();
+            in.mascara = in.readByte();
+            return switch (tipo) {
+                case CREATED -> new ProductCreatedEvent(in.varLong(), in.texto(), in.texto(), in.doble(), in.varInt());
+                case UPDATED -> new ProductUpdatedEvent(in.varLong(), in.texto(), in.texto(), in.doble(), in.varInt());
+                case DELETED -> new ProductDeletedEvent(in.varLong());
+                case STOCK_UPDATED -> new ProductStockUpdatedEvent(in.varLong(), in.varInt());
+                case STOCK_ADJUSTED -> new ProductStockAdjustedEvent(in.varLong(), in.varInt(), in.varInt());
+                default -> throw new SerializationException("Tipo de evento desconocido: " + tipo);
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Evento binario truncado", e);
+        }
+    }
+
+    private static byte[] producto(byte tipo, Long id, String nombre, String descripcion, Double precio, Integer stock) {
+        Salida out = cabecera(tipo, mascara(id, nombre, descripcion, precio, stock));
+        out.varLong(id);
+        out.texto(nombre);
+        out.texto(descripcion);
+        out.doble(precio);
+        out.varInt(stock);
+        return out.bytes();
+    }
+
+    private static Salida cabecera(byte tipo, byte mascara) {
+        Salida out = new Salida();
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(tipo);
+        out.write(mascara);
+        return out;
+    }
+
+    private static byte mascara(Object... campos) {
+        int mascara = 0;
+        for (int i = 0; i < campos.length; i++) {
+            if (campos[i] != null) {
+                mascara |= 1 << i;
+            }
+        }
+        return (byte) mascara;
+    }
+
+    /** Escritura secuencial; los campos nulos no se escriben (ya constan en la máscara). */
+    private static final class Salida {
+
+        private byte[] buffer = new byte[64];
+        private int pos;
+
+        void write(int b) {
+            if (pos == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[pos++] = (byte) b;
+        }
+
+        void varLong(Long valor) {
+            if (valor == null) {
+                return;
+            }
+            long v = (valor << 1) ^ (valor >> 63);
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void varInt(Integer valor) {
+            if (valor != null) {
+                varLong(valor.longValue());
+            }
+        }
+
+        void doble(Double valor) {
+            if (valor == null) {
+                return;
+            }
+            long bits = Double.doubleToLongBits(valor);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (bits >>> shift));
+            }
+        }
+
+        void texto(String valor) {
+            if (valor == null) {
+                return;
+            }
+            byte[] utf8 = valor.getBytes(StandardCharsets.UTF_8);
+            varLong((long) utf8.length);
+            if (pos + utf8.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + utf8.length));
+            }
+            System.arraycopy(utf8, 0, buffer, pos, utf8.length);
+            pos += utf8.length;
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(buffer, pos);
+        }
+    }
+
+    /** Lectura secuencial; cada lectura consume el siguiente bit de la máscara. */
+    private static final class Entrada {
+
+        private final byte[] data;
+        private int pos;
+        private int mascara;
+        private int campo;
+
+        Entrada(byte[] data) {
+            this.data = data;
+        }
+
+        byte readByte() {
+            return data[pos++];
+        }
+
+        private boolean presente() {
+            return (mascara & (1 << campo++)) != 0;
+        }
+
+        private long leerVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = data[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new SerializationException("Varint mal formado");
+        }
+
+        Long varLong() {
+            return presente() ? leerVarLong() : null;
+        }
+
+        Integer varInt() {
+            return presente() ? Math.toIntExact(leerVarLong()) : null;
+        }
+
+        Double doble() {
+            if (!presente()) {
+                return null;
+            }
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (data[pos++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String texto() {
+            if (!presente()) {
+                return null;
+            }
+            int longitud = Math.toIntExact(leerVarLong());
+            if (longitud < 0 || pos + longitud > data.length) {
+                throw new SerializationException("Texto fuera de rango en evento binario");
+            }
+            String valor = new String(data, pos, longitud, StandardCharsets.UTF_8);
+            pos += longitud;
+            return valor;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.example.events.serde;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+
+/**
+ * Serializa los eventos de producto con ProductEventFormat.
+ * Cualquier otro valor se envía como JSON, con las cabeceras de tipo habituales.
+ */
+public class ProductEventSerializer implements Serializer<Object> {
+
+    private final JsonSerializer<Object> json = new JsonSerializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        byte[] binario = ProductEventFormat.encode(data);
+        return binario != null ? binario : json.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        byte[] binario = ProductEventFormat.encode(data);
+        return binario != null ? binario : json.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.exception;
+
+/**
+ * Se lanza cuando un evento de un producto no encuentra su fila y el producto nunca existió en la
+ * proyección: su alta puede estar aún en un tópico de reintento. El evento pasa al reintento.
+ */
+public class ProductoPendienteException extends RuntimeException {
+
+    public ProductoPendienteException(Long id) {
+        super("El producto " + id + " aún no está en la proyección");
+    }
+}
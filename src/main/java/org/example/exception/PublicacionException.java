@@ -0,0 +1,12 @@
+package org.example.exception;
+
+/**
+ * Se lanza cuando un evento no pudo publicarse (broker caído, buffer del productor lleno,
+ * timeout de confirmación u outbox no disponible). El comando no fue aceptado.
+ */
+public class PublicacionException extends RuntimeException {
+
+    public PublicacionException(String topic, Throwable cause) {
+        super("No se pudo publicar el evento en " + topic + ": " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.exception;
+
+/**
+ * Se lanza cuando un decremento de stock dejaría el producto por debajo de cero.
+ */
+public class StockInsuficienteException extends RuntimeException {
+
+    public StockInsuficienteException(Long id, int cantidad) {
+        super("Stock insuficiente para descontar " + cantidad + " unidades del producto " + id);
+    }
+}
@@ -1,102 +1,589 @@
 package org.example.handler;
 
+import org.example.cache.CatalogVersion;
+import org.example.classes.ProductSearch;
 import org.example.classes.Producto;
+import org.example.exception.PublicacionException;
+import org.example.exception.StockInsuficienteException;
 import org.example.mapper.ProductMapper;
+import org.example.notification.StockChange;
+import org.example.notification.StockNotifier;
+import org.example.openapi.dto.BatchItemResult;
 import org.example.openapi.dto.Product;
+import org.example.openapi.dto.ProductChange;
+import org.example.openapi.dto.ProductLookupRequest;
+import org.example.openapi.dto.ProductLookupResponse;
 import org.example.openapi.dto.ProductUpdateRequest;
+import org.example.openapi.dto.StockUpdateItem;
 import org.example.service.ProductService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 @Component
 public class ProductHandler {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String PREFER_HEADER = "Prefer";
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+    static final String WAIT_FOR_PROJECTION = "wait-for-projection";
+
     private final ProductService service;
     private final ProductMapper mapper;
+    private final StockNotifier stockNotifier;
+    private final CatalogVersion catalogVersion;
+    private final int limiteDefecto;
+    private final int limiteMaximo;
+    private final int batchMaxEnVuelo;
+    private final int umbralDefecto;
+    private final Duration heartbeat;
+    private final Duration esperaDefecto;
+    private final Duration esperaMaxima;
+    private final int lookupMaxIds;
+    private final String cacheControlDetalle;
+    private final String cacheControlListado;
 
-    public ProductHandler(ProductService service, ProductMapper mapper) {
+    public ProductHandler(ProductService service, ProductMapper mapper, StockNotifier stockNotifier,
+                          CatalogVersion catalogVersion,
+                          @Value("${productos.paginacion.limite-defecto:100}") int limiteDefecto,
+                          @Value("${productos.paginacion.limite-maximo:1000}") int limiteMaximo,
+                          @Value("${productos.batch.max-en-vuelo:512}") int batchMaxEnVuelo,
+                          @Value("${productos.stock-eventos.umbral:5}") int umbralDefecto,
+                          @Value("${productos.stock-eventos.heartbeat:15s}") Duration heartbeat,
+                          @Value("${productos.proyeccion.espera:2s}") Duration esperaDefecto,
+                          @Value("${productos.proyeccion.espera-maxima:10s}") Duration esperaMaxima,
+                          @Value("${productos.lookup.max-ids:5000}") int lookupMaxIds,
+                          @Value("${productos.etag.cache-control.detalle:no-cache}") String cacheControlDetalle,
+                          @Value("${productos.etag.cache-control.listado:no-cache}") String cacheControlListado) {
         this.service = service;
         this.mapper = mapper;
+        this.stockNotifier = stockNotifier;
+        this.catalogVersion = catalogVersion;
+        this.limiteDefecto = limiteDefecto;
+        this.limiteMaximo = limiteMaximo;
+        this.batchMaxEnVuelo = batchMaxEnVuelo;
+        this.umbralDefecto = umbralDefecto;
+        this.heartbeat = heartbeat;
+        this.esperaDefecto = esperaDefecto;
+        this.esperaMaxima = esperaMaxima;
+        this.lookupMaxIds = lookupMaxIds;
+        this.cacheControlDetalle = cacheControlDetalle;
+        this.cacheControlListado = cacheControlListado;
     }
 
-    // Obtener todos los productos
+    // Obtener productos paginados por cursor (?limit=&after=) o en streaming NDJSON.
+    // Con ?ids=1,2,3 equivale a POST /api/productos/lookup
     public Mono<ServerResponse> getAll(ServerRequest request) {
-        Flux<Producto> productos = service.findAll();
-        return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(productos.map(mapper::toDto), Product.class);
+        if (request.queryParam("ids").isPresent()) {
+            List<Long> ids;
+            try {
+                ids = request.queryParams().get("ids").stream()
+                        .flatMap(valor -> Arrays.stream(valor.split(",")))
+                        .filter(valor -> !valor.isBlank())
+                        .map(valor -> Long.parseLong(valor.trim()))
+                        .toList();
+            } catch (NumberFormatException e) {
+                return ServerResponse.badRequest().build();
+            }
+            return lookup(ids);
+        }
+        Long after;
+        int limit;
+        try {
+            after = cursor(request);
+            limit = limite(request);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        if (aceptaNdjson(request)) {
+            Flux<Producto> productos = service.streamAll(after);
+            return listado(request, builder -> builder
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(productos.map(mapper::toDto), Product.class));
+        }
+        return listado(request, builder -> service.findPage(after, limit)
+                .map(mapper::toDto)
+                .collectList()
+                .flatMap(pagina -> pagina(builder, pagina, limit)));
     }
 
-    // Obtener producto por ID
+    // Obtener producto por ID. ETag fuerte "<id>-<version>": si coincide con If-None-Match
+    // se responde 304 sin mapear ni serializar
     public Mono<ServerResponse> getById(ServerRequest request) {
         Long id = Long.parseLong(request.pathVariable("id"));
         return service.findById(id)
-                .map(mapper::toDto)
-                .flatMap(dto -> ServerResponse.ok()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(dto))
+                .flatMap(producto -> {
+                    // Sin versión (entrada refrescada desde un evento) no se emite ETag
+                    String etag = producto.getVersion() != null ? "\"" + id + "-" + producto.getVersion() + "\"" : null;
+                    if (etag != null && noModificado(request, etag)) {
+                        return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(etag)
+                                .header(HttpHeaders.CACHE_CONTROL, cacheControlDetalle)
+                                .build();
+                    }
+                    ServerResponse.BodyBuilder builder = ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .header(HttpHeaders.CACHE_CONTROL, cacheControlDetalle);
+                    if (etag != null) {
+                        builder.eTag(etag);
+                    }
+                    return builder.bodyValue(mapper.toDto(producto));
+                })
                 .switchIfEmpty(ServerResponse.notFound().build());
     }
 
-    // Crear nuevo producto
+    // Crear nuevo producto: 202 cuando Kafka confirma el evento, 503 si no se pudo publicar.
+    // Con Prefer: wait-for-projection, 201 cuando el producto ya se puede leer
     public Mono<ServerResponse> create(ServerRequest request) {
+        Duration espera = esperaProyeccion(request);
         return request.bodyToMono(Product.class)
                 .map(mapper::toProducto)
-                .flatMap(service::save)
-                .map(mapper::toDto)
-                .flatMap(dto -> ServerResponse.ok()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(dto));
+                .flatMap(producto -> espera == null
+                        ? service.save(producto).flatMap(this::aceptado)
+                        : service.asignarId(producto)
+                                .flatMap(conId -> service.saveAndWait(conId, espera)
+                                        .flatMap(creado -> proyectado(ServerResponse.created(URI.create("/api/productos/" + creado.getId())), creado))
+                                        .switchIfEmpty(Mono.defer(() -> aceptado(conId)))))
+                .onErrorResume(PublicacionException.class, this::publicacionFallida);
+    }
+
+    // Resolver muchos ids en una consulta; respeta el orden pedido e informa los inexistentes
+    public Mono<ServerResponse> lookup(ServerRequest request) {
+        return request.bodyToMono(ProductLookupRequest.class)
+                .flatMap(body -> lookup(body.getIds() != null ? body.getIds() : List.of()))
+                .switchIfEmpty(ServerResponse.badRequest().build());
     }
 
-    // Actualizar producto completo
+    private Mono<ServerResponse> lookup(List<Long> pedidos) {
+        // Sin duplicados y en el orden de la petición
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Long id : pedidos) {
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        if (ids.size() > lookupMaxIds) {
+            return ServerResponse.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("success", false, "message", "Se admiten como máximo " + lookupMaxIds + " ids"));
+        }
+        return service.findByIds(ids)
+                .flatMap(encontrados -> {
+                    List<Product> productos = new ArrayList<>(encontrados.size());
+                    List<Long> faltantes = new ArrayList<>();
+                    for (Long id : ids) {
+                        Producto producto = encontrados.get(id);
+                        if (producto != null) {
+                            productos.add(mapper.toDto(producto));
+                        } else {
+                            faltantes.add(id);
+                        }
+                    }
+                    return ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(new ProductLookupResponse().products(productos).missing(faltantes));
+                });
+    }
+
+    // Crear productos en lote (array JSON o NDJSON). Los elementos se mapean y publican a medida
+    // que se leen, con un máximo de envíos pendientes de confirmación; el orden de la respuesta
+    // es el de la petición
+    public Mono<ServerResponse> createBatch(ServerRequest request) {
+        Flux<BatchItemResult> resultados = request.bodyToFlux(Product.class)
+                .index()
+                .flatMapSequential(item -> createItem(item.getT1().intValue(), item.getT2()), batchMaxEnVuelo);
+        return batchResponse(request, resultados);
+    }
+
+    // Actualizar el stock de varios productos (array JSON o NDJSON de {id, stock})
+    public Mono<ServerResponse> updateStockBatch(ServerRequest request) {
+        Flux<BatchItemResult> resultados = request.bodyToFlux(StockUpdateItem.class)
+                .index()
+                .flatMapSequential(item -> updateStockItem(item.getT1().intValue(), item.getT2()), batchMaxEnVuelo);
+        return batchResponse(request, resultados);
+    }
+
+    // Actualizar producto completo (200 en lugar de 202 con Prefer: wait-for-projection)
     public Mono<ServerResponse> update(ServerRequest request) {
         Long id = Long.parseLong(request.pathVariable("id"));
+        Duration espera = esperaProyeccion(request);
         return request.bodyToMono(ProductUpdateRequest.class)
                 .flatMap(updateRequest ->
                         service.findById(id)
-                                .flatMap(existing -> service.update(id, mapper.toProducto(updateRequest, existing)))
-                                .map(mapper::toDto)
+                                .flatMap(existing -> {
+                                    Producto actualizado = mapper.toProducto(updateRequest, existing);
+                                    return espera == null
+                                            ? service.update(id, actualizado).flatMap(this::aceptado)
+                                            : service.updateAndWait(id, actualizado, espera)
+                                                    .flatMap(producto -> proyectado(ServerResponse.ok(), producto))
+                                                    .switchIfEmpty(Mono.defer(() -> aceptado(actualizado)));
+                                })
                 )
-                .flatMap(dto -> ServerResponse.ok()
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(dto))
-                .switchIfEmpty(ServerResponse.notFound().build());
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(PublicacionException.class, this::publicacionFallida);
     }
 
 
-    // Actualizar solo stock
+    // Actualizar solo stock (200 en lugar de 202 con Prefer: wait-for-projection)
     public Mono<ServerResponse> updateStock(ServerRequest request) {
         Long id = Long.parseLong(request.pathVariable("id"));
+        Duration espera = esperaProyeccion(request);
         return request.bodyToMono(Map.class)
                 .flatMap(body -> {
                     Integer stock = (Integer) body.get("stock");
-                    return service.updateStock(id, stock)
-                            .map(mapper::toDto);
+                    if (espera == null) {
+                        return service.updateStock(id, stock).flatMap(this::aceptado);
+                    }
+                    return service.findById(id)
+                            .flatMap(existing -> service.updateStockAndWait(id, stock, espera)
+                                    .flatMap(producto -> proyectado(ServerResponse.ok(), producto))
+                                    .switchIfEmpty(Mono.defer(() -> {
+                                        existing.setStock(stock);
+                                        return aceptado(existing);
+                                    })));
                 })
-                .flatMap(dto -> ServerResponse.ok()
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(PublicacionException.class, this::publicacionFallida);
+    }
+
+    // Incrementar stock (cantidad opcional, por defecto 1)
+    public Mono<ServerResponse> increaseStock(ServerRequest request) {
+        Long id = Long.parseLong(request.pathVariable("id"));
+        return cantidad(request)
+                .flatMap(cantidad -> cantidad <= 0
+                        ? ServerResponse.badRequest().build()
+                        : service.increaseStock(id, cantidad)
+                                .map(mapper::toDto)
+                                .flatMap(dto -> ServerResponse.ok()
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .bodyValue(dto))
+                                .switchIfEmpty(ServerResponse.notFound().build()))
+                .onErrorResume(IllegalArgumentException.class, this::cantidadInvalida)
+                .onErrorResume(PublicacionException.class, this::publicacionFallida);
+    }
+
+    // Decrementar stock (cantidad opcional, por defecto 1); 409 si no hay stock suficiente
+    public Mono<ServerResponse> decreaseStock(ServerRequest request) {
+        Long id = Long.parseLong(request.pathVariable("id"));
+        return cantidad(request)
+                .flatMap(cantidad -> cantidad <= 0
+                        ? ServerResponse.badRequest().build()
+                        : service.decreaseStock(id, cantidad)
+                                .map(mapper::toDto)
+                                .flatMap(dto -> ServerResponse.ok()
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .bodyValue(dto))
+                                .switchIfEmpty(ServerResponse.notFound().build()))
+                .onErrorResume(StockInsuficienteException.class, e -> ServerResponse.status(HttpStatus.CONFLICT)
                         .contentType(MediaType.APPLICATION_JSON)
-                        .bodyValue(dto))
-                .switchIfEmpty(ServerResponse.notFound().build());
+                        .bodyValue(Map.of("success", false, "message", e.getMessage())))
+                .onErrorResume(IllegalArgumentException.class, this::cantidadInvalida)
+                .onErrorResume(PublicacionException.class, this::publicacionFallida);
     }
 
     // Obtener productos bajo stock
     public Mono<ServerResponse> getBajoStock(ServerRequest request) {
-        int minimo = Integer.parseInt(request.queryParam("minimo").orElse("5"));
+        int minimo;
+        Long after;
+        int limit;
+        try {
+            minimo = Integer.parseInt(request.queryParam("minimo").orElse("5"));
+            after = cursor(request);
+            limit = limite(request);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        if (aceptaNdjson(request)) {
+            return listado(request, builder -> builder
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(service.streamProductosBajoStock(minimo, after).map(mapper::toDto), Product.class));
+        }
+        return listado(request, builder -> service.obtenerProductosBajoStock(minimo, after, limit)
+                .map(mapper::toDto)
+                .collectList()
+                .flatMap(pagina -> pagina(builder, pagina, limit)));
+    }
+
+    // Búsqueda: ?q=&precioMin=&precioMax=&stockMin=&orden=id|precio|-precio|relevancia&limit=&cursor=
+    // El cursor de la página siguiente llega en X-Next-Cursor y es opaco para el cliente
+    public Mono<ServerResponse> search(ServerRequest request) {
+        ProductSearch criterio;
+        try {
+            criterio = new ProductSearch(
+                    request.queryParam("q").orElse(null),
+                    request.queryParam("precioMin").map(Double::parseDouble).orElse(null),
+                    request.queryParam("precioMax").map(Double::parseDouble).orElse(null),
+                    request.queryParam("stockMin").map(Integer::parseInt).orElse(null),
+                    orden(request.queryParam("orden").orElse("id")),
+                    request.queryParam("cursor").orElse(null),
+                    limite(request));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().build();
+        }
+        return service.search(criterio)
+                .collectList()
+                .flatMap(resultados -> {
+                    List<Product> pagina = resultados.stream().map(r -> mapper.toDto(r.getT1())).toList();
+                    ServerResponse.BodyBuilder builder = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+                    if (resultados.size() == criterio.getLimit()) {
+                        builder.header(NEXT_CURSOR_HEADER, resultados.get(resultados.size() - 1).getT2());
+                    }
+                    return builder.bodyValue(pagina);
+                })
+                .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Map.of("success", false, "message", e.getMessage())));
+    }
+
+    // Feed de cambios desde ?since=<token>: página JSON (?limit=) con el token para continuar en
+    // X-Next-Cursor, o todo lo pendiente en NDJSON (cada línea trae su propio token)
+    public Mono<ServerResponse> changes(ServerRequest request) {
+        String since = request.queryParam("since").orElse(null);
+        boolean ndjson = aceptaNdjson(request);
+        Flux<ProductChange> cambios;
+        int limit;
+        try {
+            limit = limite(request);
+            cambios = service.changes(since, ndjson ? null : limit).map(mapper::toDto);
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(Map.of("success", false, "message", e.getMessage()));
+        }
+        if (ndjson) {
+            return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(cambios, ProductChange.class);
+        }
+        return cambios.collectList()
+                .flatMap(pagina -> {
+                    // Sin cambios se devuelve el mismo token, para volver a consultar desde ahí
+                    String siguiente = pagina.isEmpty() ? since : pagina.get(pagina.size() - 1).getToken();
+                    ServerResponse.BodyBuilder builder = ServerResponse.ok().contentType(MediaType.APPLICATION_JSON);
+                    if (siguiente != null) {
+                        builder.header(NEXT_CURSOR_HEADER, siguiente);
+                    }
+                    return builder.bodyValue(pagina);
+                });
+    }
+
+    // Stream SSE de cambios de stock: evento "low-stock" cuando un producto cruza el umbral,
+    // "stock-change" para el resto (omitidos con ?soloBajoStock=true)
+    public Mono<ServerResponse> stockEvents(ServerRequest request) {
+        int umbral;
+        try {
+            umbral = request.queryParam("umbral").map(Integer::parseInt).orElse(umbralDefecto);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        boolean soloBajoStock = request.queryParam("soloBajoStock").map(Boolean::parseBoolean).orElse(false);
+        Flux<ServerSentEvent<StockChange>> cambios = stockNotifier.subscribe()
+                .filter(cambio -> !soloBajoStock || cambio.cruzaUmbral(umbral))
+                .map(cambio -> ServerSentEvent.builder(cambio)
+                        .event(cambio.cruzaUmbral(umbral) ? "low-stock" : "stock-change")
+                        .build());
+        // Comentario periódico para que proxies y balanceadores no cierren la conexión inactiva
+        Flux<ServerSentEvent<StockChange>> keepAlive = Flux.interval(heartbeat)
+                .map(tick -> ServerSentEvent.<StockChange>builder().comment("keep-alive").build());
         return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(service.obtenerProductosBajoStock(minimo).map(mapper::toDto), Product.class);
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromServerSentEvents(Flux.merge(cambios, keepAlive)));
     }
 
-    // Eliminar producto
+    // Eliminar producto (204 en lugar de 202 con Prefer: wait-for-projection)
     public Mono<ServerResponse> delete(ServerRequest request) {
         Long id = Long.parseLong(request.pathVariable("id"));
-        return service.delete(id)
-                .then(ServerResponse.noContent().build());
+        Duration espera = esperaProyeccion(request);
+        Mono<ServerResponse> respuesta = espera == null
+                ? service.delete(id).then(ServerResponse.accepted().build())
+                : service.deleteAndWait(id, espera)
+                        .flatMap(aplicado -> aplicado
+                                ? ServerResponse.noContent().header(PREFERENCE_APPLIED_HEADER, WAIT_FOR_PROJECTION).build()
+                                : ServerResponse.accepted().build());
+        return respuesta.onErrorResume(PublicacionException.class, this::publicacionFallida);
+    }
+
+    private Mono<ServerResponse> aceptado(Producto producto) {
+        return ServerResponse.accepted()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mapper.toDto(producto));
+    }
+
+    private Mono<ServerResponse> proyectado(ServerResponse.BodyBuilder builder, Producto producto) {
+        return builder.header(PREFERENCE_APPLIED_HEADER, WAIT_FOR_PROJECTION)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(mapper.toDto(producto));
+    }
+
+    // Prefer: wait-for-projection[, wait=<segundos>] (RFC 7240); null si el cliente no la pidió.
+    // Sin wait se usa productos.proyeccion.espera, y nunca más que productos.proyeccion.espera-maxima
+    private Duration esperaProyeccion(ServerRequest request) {
+        boolean pedida = false;
+        Duration espera = esperaDefecto;
+        for (String valor : request.headers().header(PREFER_HEADER)) {
+            for (String preferencia : valor.split(",")) {
+                String p = preferencia.trim();
+                if (p.equalsIgnoreCase(WAIT_FOR_PROJECTION)) {
+                    pedida = true;
+                } else if (p.regionMatches(true, 0, "wait=", 0, 5)) {
+                    try {
+                        espera = Duration.ofSeconds(Long.parseLong(p.substring(5).trim()));
+                    } catch (NumberFormatException e) {
+                        // Preferencia mal formada: se ignora, como indica la RFC
+                    }
+                }
+            }
+        }
+        if (!pedida) {
+            return null;
+        }
+        return espera.compareTo(esperaMaxima) > 0 ? esperaMaxima : espera;
+    }
+
+    // El evento no llegó a Kafka (ni a la outbox): fallo rápido para que el cliente reintente
+    private Mono<ServerResponse> publicacionFallida(PublicacionException e) {
+        return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    // Listados con ETag de la versión del catálogo: el 304 se decide antes de consultar las filas
+    private Mono<ServerResponse> listado(ServerRequest request, Function<ServerResponse.BodyBuilder, Mono<ServerResponse>> respuesta) {
+        return catalogVersion.actual()
+                .flatMap(version -> {
+                    String etag = "\"catalogo-" + version + "\"";
+                    if (noModificado(request, etag)) {
+                        return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(etag)
+                                .header(HttpHeaders.CACHE_CONTROL, cacheControlListado)
+                                .build();
+                    }
+                    return respuesta.apply(ServerResponse.ok()
+                            .eTag(etag)
+                            .header(HttpHeaders.CACHE_CONTROL, cacheControlListado));
+                });
+    }
+
+    // Comparación débil de If-None-Match (RFC 9110): "*" o cualquier etiqueta igual, con o sin W/
+    private static boolean noModificado(ServerRequest request, String etag) {
+        for (String candidato : request.headers().asHttpHeaders().getIfNoneMatch()) {
+            if (candidato.equals("*") || candidato.equals(etag) || candidato.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<ServerResponse> pagina(ServerResponse.BodyBuilder builder, List<Product> pagina, int limit) {
+        builder.contentType(MediaType.APPLICATION_JSON);
+        // Página completa: puede haber más filas, se informa el cursor para la siguiente
+        if (pagina.size() == limit) {
+            builder.header(NEXT_CURSOR_HEADER, String.valueOf(pagina.get(pagina.size() - 1).getId()));
+        }
+        return builder.bodyValue(pagina);
+    }
+
+    private Long cursor(ServerRequest request) {
+        return request.queryParam("after").map(Long::parseLong).orElse(null);
+    }
+
+    private static ProductSearch.Orden orden(String valor) {
+        return switch (valor) {
+            case "id" -> ProductSearch.Orden.ID;
+            case "precio" -> ProductSearch.Orden.PRECIO_ASC;
+            case "-precio" -> ProductSearch.Orden.PRECIO_DESC;
+            case "relevancia" -> ProductSearch.Orden.RELEVANCIA;
+            default -> throw new IllegalArgumentException("Orden no soportado: " + valor);
+        };
+    }
+
+    private int limite(ServerRequest request) {
+        int limit = request.queryParam("limit").map(Integer::parseInt).orElse(limiteDefecto);
+        return Math.max(1, Math.min(limit, limiteMaximo));
+    }
+
+    private Mono<BatchItemResult> createItem(int index, Product dto) {
+        Long id = dto.getId() != null ? dto.getId().longValue() : null;
+        if (dto.getName() == null || dto.getName().isBlank()) {
+            return Mono.just(rejected(index, id, "El campo name es obligatorio"));
+        }
+        if (dto.getPrice() == null || dto.getPrice() < 0) {
+            return Mono.just(rejected(index, id, "El campo price es obligatorio y no puede ser negativo"));
+        }
+        if (dto.getStock() == null || dto.getStock() < 0) {
+            return Mono.just(rejected(index, id, "El campo stock es obligatorio y no puede ser negativo"));
+        }
+        return service.save(mapper.toProducto(dto))
+                .map(producto -> accepted(index, producto.getId()))
+                .onErrorResume(e -> Mono.just(rejected(index, id, e.getMessage())));
+    }
+
+    private Mono<BatchItemResult> updateStockItem(int index, StockUpdateItem item) {
+        if (item.getId() == null) {
+            return Mono.just(rejected(index, null, "El campo id es obligatorio"));
+        }
+        if (item.getStock() == null || item.getStock() < 0) {
+            return Mono.just(rejected(index, item.getId(), "El campo stock es obligatorio y no puede ser negativo"));
+        }
+        return service.publishStockUpdate(item.getId(), item.getStock())
+                .map(id -> accepted(index, id))
+                .onErrorResume(e -> Mono.just(rejected(index, item.getId(), e.getMessage())));
+    }
+
+    private Mono<ServerResponse> batchResponse(ServerRequest request, Flux<BatchItemResult> resultados) {
+        MediaType tipo = aceptaNdjson(request) ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        return ServerResponse.ok()
+                .contentType(tipo)
+                .body(resultados, BatchItemResult.class);
+    }
+
+    private static BatchItemResult accepted(int index, Long id) {
+        return new BatchItemResult().index(index).id(id).status("ACCEPTED");
+    }
+
+    private static BatchItemResult rejected(int index, Long id, String message) {
+        return new BatchItemResult().index(index).id(id).status("REJECTED").message(message);
+    }
+
+    // quantity ausente vale 1; presente y no entera falla con IllegalArgumentException (400)
+    private Mono<Integer> cantidad(ServerRequest request) {
+        return request.bodyToMono(Map.class)
+                .mapNotNull(body -> {
+                    Object valor = body.get("quantity");
+                    if (valor != null && !(valor instanceof Integer)) {
+                        throw new IllegalArgumentException("quantity debe ser un entero: " + valor);
+                    }
+                    return (Integer) valor;
+                })
+                .defaultIfEmpty(1);
+    }
+
+    private Mono<ServerResponse> cantidadInvalida(IllegalArgumentException e) {
+        return ServerResponse.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("success", false, "message", e.getMessage()));
+    }
+
+    private boolean aceptaNdjson(ServerRequest request) {
+        return request.headers().accept().stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
     }
 }
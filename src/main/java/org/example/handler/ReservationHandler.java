@@ -0,0 +1,97 @@
+package org.example.handler;
+
+import org.example.classes.Reserva;
+import org.example.exception.PublicacionException;
+import org.example.exception.StockInsuficienteException;
+import org.example.reserva.StockReservations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Reservas de stock: reservar, confirmar y liberar.
+ * Una reserva vive en la réplica que la creó; confirmarla o liberarla desde otra responde 421
+ * (el ingress mantiene la afinidad por cookie para que no ocurra).
+ */
+@Component
+public class ReservationHandler {
+
+    // Misdirected Request: la reserva es de otra réplica
+    private static final int OTRA_REPLICA = 421;
+
+    private final StockReservations reservations;
+
+    public ReservationHandler(StockReservations reservations) {
+        this.reservations = reservations;
+    }
+
+    // Reservar (quantity opcional, por defecto 1; ttlSeconds opcional); 409 si no hay stock suficiente.
+    // 400 si quantity o ttlSeconds vienen y no son enteros positivos
+    public Mono<ServerResponse> reservar(ServerRequest request) {
+        Long id = Long.parseLong(request.pathVariable("id"));
+        return request.bodyToMono(Map.class)
+                .defaultIfEmpty(Map.of())
+                .flatMap(body -> {
+                    Object quantity = body.get("quantity");
+                    Object ttlSeconds = body.get("ttlSeconds");
+                    if (!(quantity == null || quantity instanceof Integer q && q > 0)
+                            || !(ttlSeconds == null || ttlSeconds instanceof Integer s && s > 0)) {
+                        return ServerResponse.badRequest()
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .bodyValue(Map.of("success", false,
+                                        "message", "quantity y ttlSeconds deben ser enteros positivos"));
+                    }
+                    int cantidad = quantity != null ? (Integer) quantity : 1;
+                    Duration ttl = ttlSeconds != null ? Duration.ofSeconds((Integer) ttlSeconds) : null;
+                    return reservations.reservar(id, cantidad, ttl)
+                            .flatMap(reserva -> ServerResponse.created(URI.create("/api/productos/reservas/" + reserva.getId()))
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .bodyValue(dto(reserva)))
+                            .switchIfEmpty(ServerResponse.notFound().build());
+                })
+                .onErrorResume(StockInsuficienteException.class, e -> ServerResponse.status(HttpStatus.CONFLICT)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Map.of("success", false, "message", e.getMessage())))
+                .onErrorResume(PublicacionException.class, e -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Map.of("success", false, "message", e.getMessage())));
+    }
+
+    // Confirmar: responde cuando la venta ya está persistida
+    public Mono<ServerResponse> confirmar(ServerRequest request) {
+        String id = request.pathVariable("reserva");
+        if (!reservations.esLocal(id)) {
+            return ServerResponse.status(OTRA_REPLICA).build();
+        }
+        return reservations.confirmar(id)
+                .flatMap(confirmada -> confirmada
+                        ? ServerResponse.noContent().build()
+                        : ServerResponse.notFound().build());
+    }
+
+    public Mono<ServerResponse> liberar(ServerRequest request) {
+        String id = request.pathVariable("reserva");
+        if (!reservations.esLocal(id)) {
+            return ServerResponse.status(OTRA_REPLICA).build();
+        }
+        return reservations.liberar(id)
+                ? ServerResponse.noContent().build()
+                : ServerResponse.notFound().build();
+    }
+
+    private static Map<String, Object> dto(Reserva reserva) {
+        return Map.of("id", reserva.getId(),
+                "productId", reserva.getProductoId(),
+                "quantity", reserva.getCantidad(),
+                "expiresAt", reserva.getExpira().toString());
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Límite de concurrencia adaptativo por gradiente de latencia.
+ * Compara la latencia reciente (media móvil corta) con la de referencia (media móvil larga):
+ * mientras no empeora, el límite crece en raíz del límite por muestra; si la reciente supera la
+ * de referencia más allá de la tolerancia, el límite baja en proporción (como mucho a la mitad).
+ * Un fallo por sobrecarga (timeout, 5xx) lo reduce de forma multiplicativa, como AIMD.
+ * Solo se aprende con carga: con menos de la mitad del límite en uso la latencia no dice nada de él.
+ */
+public class AdaptiveLimit {
+
+    private static final double TOLERANCIA = 1.5;
+    private static final double SUAVIZADO = 0.2;
+    private static final double DESCENSO = 0.9;
+    private static final double ALFA_CORTO = 2.0 / (10 + 1);
+    private static final double ALFA_LARGO = 2.0 / (600 + 1);
+
+    private final int minimo;
+    private final int maximo;
+    private final AtomicInteger enVuelo = new AtomicInteger();
+    private volatile double limite;
+    // Protegidos por this
+    private double rttCorto;
+    private double rttLargo;
+
+    public AdaptiveLimit(int inicial, int minimo, int maximo) {
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.limite = Math.max(minimo, Math.min(maximo, inicial));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int actual = enVuelo.get();
+            if (actual >= (int) limite) {
+                return false;
+            }
+            if (enVuelo.compareAndSet(actual, actual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Petición terminada con normalidad: su latencia es una muestra
+    public void onSuccess(long rttNanos) {
+        muestra(rttNanos, enVuelo.getAndDecrement());
+    }
+
+    // Petición fallida por sobrecarga
+    public synchronized void onDropped() {
+        enVuelo.decrementAndGet();
+        limite = Math.max(minimo, limite * DESCENSO);
+    }
+
+    // Petición cancelada o sin latencia representativa (streaming)
+    public void onIgnored() {
+        enVuelo.decrementAndGet();
+    }
+
+    public int getLimite() {
+        return (int) limite;
+    }
+
+    public int getEnVuelo() {
+        return enVuelo.get();
+    }
+
+    public synchronized double getRttReferenciaMs() {
+        return rttLargo / 1_000_000.0;
+    }
+
+    private synchronized void muestra(long rttNanos, int enVueloAlTerminar) {
+        if (rttLargo == 0) {
+            rttCorto = rttNanos;
+            rttLargo = rttNanos;
+            return;
+        }
+        rttCorto += ALFA_CORTO * (rttNanos - rttCorto);
+        rttLargo += ALFA_LARGO * (rttNanos - rttLargo);
+        // Tras una sobrecarga larga la referencia queda inflada: se acerca a la reciente para poder volver a crecer
+        if (rttLargo > 2 * rttCorto) {
+            rttLargo *= 0.95;
+        }
+        if (enVueloAlTerminar < limite / 2) {
+            return;
+        }
+        double gradiente = Math.max(0.5, Math.min(1.0, TOLERANCIA * rttLargo / rttCorto));
+        double nuevo = limite * gradiente + Math.sqrt(limite);
+        nuevo = limite * (1 - SUAVIZADO) + nuevo * SUAVIZADO;
+        limite = Math.max(minimo, Math.min(maximo, nuevo));
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.R2dbcTimeoutException;
+import org.example.exception.PublicacionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.pool.PoolAcquirePendingLimitException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limita la concurrencia de /api/productos con un AdaptiveLimit para lecturas y otro para escrituras.
+ * Por encima del límite responde al instante con estado-rechazo (503 por defecto) y Retry-After,
+ * en lugar de dejar que la cola crezca en el pool de R2DBC o en el productor de Kafka.
+ * Solo reducen el límite las señales de saturación: respuestas 503/504, timeouts, PublicacionException
+ * y fallos al obtener conexión del pool. El resto de errores no cuenta ni como éxito ni como caída.
+ * Los streams NDJSON y las peticiones con Prefer: wait-for-projection no aportan muestras de latencia:
+ * su duración depende del tamaño del catálogo o del retraso de la proyección, no de la carga.
+ * Es un WebFilter y no un filtro de ProductRouter para medir hasta que la respuesta termina de
+ * escribirse: muchos handlers devuelven el cuerpo como un Publisher que se consulta al escribir.
+ * Métricas: productos.http.limite, productos.http.limite.activas, productos.http.limite.rtt y
+ * productos.http.limite.rechazos, con tag tipo=lectura|escritura.
+ */
+@Component
+@ConditionalOnProperty(name = "productos.limite.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitFilter implements WebFilter {
+
+    private static final String PREFIJO = "/api/productos";
+    // SSE: conexiones de larga duración que no consumen pool mientras esperan
+    private static final String STOCK_EVENTOS = "/api/productos/stock/eventos";
+    private static final String LOOKUP = "/api/productos/lookup";
+    private static final String WAIT_FOR_PROJECTION = "wait-for-projection";
+    private static final byte[] CUERPO = "{\"success\":false,\"message\":\"Servicio saturado, reintentar más tarde\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final AdaptiveLimit lectura;
+    private final AdaptiveLimit escritura;
+    private final Counter rechazosLectura;
+    private final Counter rechazosEscritura;
+    private final HttpStatus estadoRechazo;
+    private final String retryAfter;
+
+    public ConcurrencyLimitFilter(MeterRegistry registry,
+                                  @Value("${productos.limite.lectura.inicial:200}") int lecturaInicial,
+                                  @Value("${productos.limite.lectura.minimo:20}") int lecturaMinimo,
+                                  @Value("${productos.limite.lectura.maximo:2000}") int lecturaMaximo,
+                                  @Value("${productos.limite.escritura.inicial:50}") int escrituraInicial,
+                                  @Value("${productos.limite.escritura.minimo:10}") int escrituraMinimo,
+                                  @Value("${productos.limite.escritura.maximo:500}") int escrituraMaximo,
+                                  @Value("${productos.limite.estado-rechazo:503}") int estadoRechazo,
+                                  @Value("${productos.limite.retry-after:1s}") Duration retryAfter) {
+        this.lectura = new AdaptiveLimit(lecturaInicial, lecturaMinimo, lecturaMaximo);
+        this.escritura = new AdaptiveLimit(escrituraInicial, escrituraMinimo, escrituraMaximo);
+        this.rechazosLectura = metricas(registry, "lectura", lectura);
+        this.rechazosEscritura = metricas(registry, "escritura", escritura);
+        this.estadoRechazo = HttpStatus.valueOf(estadoRechazo);
+        this.retryAfter = Long.toString(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String ruta = exchange.getRequest().getPath().pathWithinApplication().value();
+        HttpMethod metodo = exchange.getRequest().getMethod();
+        if (!ruta.startsWith(PREFIJO) || ruta.equals(STOCK_EVENTOS) || HttpMethod.OPTIONS.equals(metodo)) {
+            return chain.filter(exchange);
+        }
+        boolean esLectura = HttpMethod.GET.equals(metodo) || HttpMethod.HEAD.equals(metodo) || ruta.equals(LOOKUP);
+        AdaptiveLimit limite = esLectura ? lectura : escritura;
+        if (!limite.tryAcquire()) {
+            (esLectura ? rechazosLectura : rechazosEscritura).increment();
+            return rechazar(exchange.getResponse());
+        }
+        HttpHeaders cabeceras = exchange.getRequest().getHeaders();
+        boolean sinMuestra = streaming(cabeceras)
+                || cabeceras.getOrEmpty("Prefer").stream().anyMatch(valor -> valor.contains(WAIT_FOR_PROJECTION));
+        long inicio = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnError(e -> {
+                    if (saturacion(e)) {
+                        limite.onDropped();
+                    } else {
+                        limite.onIgnored();
+                    }
+                })
+                .doFinally(senal -> {
+                    if (senal == SignalType.ON_ERROR) {
+                        return;
+                    }
+                    if (sobrecarga(exchange.getResponse().getStatusCode())) {
+                        limite.onDropped();
+                    } else if (senal == SignalType.CANCEL || sinMuestra) {
+                        limite.onIgnored();
+                    } else {
+                        limite.onSuccess(System.nanoTime() - inicio);
+                    }
+                });
+    }
+
+    // 503 (publicación fallida) y 504 indican que lo de detrás está saturado
+    private static boolean sobrecarga(HttpStatusCode estado) {
+        return estado != null && (estado.value() == HttpStatus.SERVICE_UNAVAILABLE.value()
+                || estado.value() == HttpStatus.GATEWAY_TIMEOUT.value());
+    }
+
+    // Respuestas en streaming (NDJSON o SSE), también con parámetros (charset); un comodín (*/*) no cuenta
+    static boolean streaming(HttpHeaders cabeceras) {
+        return cabeceras.getAccept().stream()
+                .filter(tipo -> !tipo.isWildcardType() && !tipo.isWildcardSubtype())
+                .anyMatch(tipo -> MediaType.APPLICATION_NDJSON.isCompatibleWith(tipo) || MediaType.TEXT_EVENT_STREAM.isCompatibleWith(tipo));
+    }
+
+    // Timeouts, publicación fallida o pool sin conexiones, aunque lleguen envueltos en otra excepción
+    static boolean saturacion(Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof TimeoutException || causa instanceof R2dbcTimeoutException
+                    || causa instanceof PublicacionException || causa instanceof PoolAcquirePendingLimitException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<Void> rechazar(ServerHttpResponse response) {
+        response.setStatusCode(estadoRechazo);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer cuerpo = response.bufferFactory().wrap(CUERPO);
+        return response.writeWith(Mono.just(cuerpo));
+    }
+
+    private static Counter metricas(MeterRegistry registry, String tipo, AdaptiveLimit limite) {
+        Gauge.builder("productos.http.limite", limite, AdaptiveLimit::getLimite)
+                .description("Límite de concurrencia adaptativo")
+                .tag("tipo", tipo)
+                .register(registry);
+        Gauge.builder("productos.http.limite.activas", limite, AdaptiveLimit::getEnVuelo)
+                .description("Peticiones en curso bajo el límite")
+                .tag("tipo", tipo)
+                .register(registry);
+        Gauge.builder("productos.http.limite.rtt", limite, AdaptiveLimit::getRttReferenciaMs)
+                .description("Latencia de referencia del límite (ms)")
+                .tag("tipo", tipo)
+                .register(registry);
+        return Counter.builder("productos.http.limite.rechazos")
+                .description("Peticiones rechazadas por el límite de concurrencia")
+                .tag("tipo", tipo)
+                .register(registry);
+    }
+}
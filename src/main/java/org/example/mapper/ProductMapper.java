@@ -1,7 +1,9 @@
 package org.example.mapper;
 
+import org.example.classes.CambioProducto;
 import org.example.classes.Producto;
 import org.example.openapi.dto.Product;
+import org.example.openapi.dto.ProductChange;
 import org.example.openapi.dto.ProductUpdateRequest;
 import org.springframework.stereotype.Component;
 
@@ -32,12 +34,28 @@ public class ProductMapper {
         return dto;
     }
 
-    // Actualizar entidad existente desde ProductUpdateRequest
-    public Producto toProducto(ProductUpdateRequest updateRequest, Producto producto) {
+    // Actualizar entidad existente desde ProductUpdateRequest, sobre una copia (el existente puede ser
+    // la instancia de la caché). El stock solo si viene en la petición: null deja el guardado, porque el
+    // leído puede estar desfasado respecto a los ajustes y arriendos concurrentes
+    public Producto toProducto(ProductUpdateRequest updateRequest, Producto existente) {
+        Producto producto = new Producto(existente.getId(), existente.getNombre(), existente.getDescripcion(),
+                existente.getPrecio(), updateRequest.getStock(), existente.getActivo(), existente.getFechaCreacion(),
+                existente.getVersion(), existente.getActualizadoEn());
         if(updateRequest.getName() != null) producto.setNombre(updateRequest.getName());
         if(updateRequest.getDescription() != null) producto.setDescripcion(updateRequest.getDescription());
         if(updateRequest.getPrice() != null) producto.setPrecio(updateRequest.getPrice().doubleValue());
-        if(updateRequest.getStock() != null) producto.setStock(updateRequest.getStock());
         return producto;
     }
+
+    // Entrada del feed de cambios; las bajas no llevan producto
+    public ProductChange toDto(CambioProducto cambio) {
+        ProductChange dto = new ProductChange();
+        dto.setToken(cambio.getToken());
+        dto.setId(cambio.getId());
+        dto.setDeleted(cambio.isEliminado());
+        dto.setVersion(cambio.getVersion());
+        if(cambio.getFecha() != null) dto.setUpdatedAt(cambio.getFecha());
+        if(cambio.getProducto() != null) dto.setProduct(toDto(cambio.getProducto()));
+        return dto;
+    }
 }
@@ -0,0 +1,144 @@
+package org.example.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas del pipeline CQRS: HTTP → Kafka → ProductConsumer → Postgres.
+ * <ul>
+ *     <li>productos.http.handler: latencia del handler por ruta, método y estado</li>
+ *     <li>productos.kafka.send: latencia hasta la confirmación del broker, por tópico y resultado</li>
+ *     <li>productos.consumer.procesamiento: tiempo de aplicar un evento (o un lote) en la proyección</li>
+ *     <li>productos.consumer.lote.registros / productos.consumer.lote.filas: tamaño del lote antes y después de fusionar</li>
+ *     <li>productos.proyeccion.lag: desde el comando HTTP hasta que la proyección lo persiste</li>
+ *     <li>productos.consumer.errores: eventos que fallan al aplicarse, por tópico (incluidos los de reintento) y excepción</li>
+ *     <li>productos.consumer.dlt: eventos que agotan los reintentos o no se pueden aplicar, por tópico de origen</li>
+ * </ul>
+ */
+@Component
+public class ProductMetrics {
+
+    private static final String RESULT = "result";
+
+    private final MeterRegistry registry;
+    private final DistributionSummary loteRegistros;
+    private final DistributionSummary loteFilas;
+
+    public ProductMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.loteRegistros = DistributionSummary.builder("productos.consumer.lote.registros")
+                .description("Registros recibidos por poll en modo lote")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.loteFilas = DistributionSummary.builder("productos.consumer.lote.filas")
+                .description("Productos distintos aplicados por lote tras fusionar eventos")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // Filtro para ProductRouter: mide cada handler con la plantilla de la ruta como tag
+    public HandlerFilterFunction<ServerResponse, ServerResponse> handlerTimer() {
+        return (request, next) -> {
+            long inicio = System.nanoTime();
+            return next.handle(request)
+                    .doOnSuccess(response -> recordHandler(request, response != null ? response.statusCode() : null, inicio))
+                    .doOnError(e -> recordHandler(request, null, inicio));
+        };
+    }
+
+    public <T> Mono<T> timeSend(String topic, Mono<T> envio) {
+        return Mono.defer(() -> {
+            long inicio = System.nanoTime();
+            return envio
+                    .doOnSuccess(v -> record("productos.kafka.send", topic, "success", inicio))
+                    .doOnError(e -> record("productos.kafka.send", topic, "failure", inicio));
+        });
+    }
+
+    public <T> Mono<T> timeConsumer(String topic, Mono<T> procesamiento) {
+        return Mono.defer(() -> {
+            long inicio = System.nanoTime();
+            return procesamiento
+                    .doOnSuccess(v -> record("productos.consumer.procesamiento", topic, "success", inicio))
+                    .doOnError(e -> record("productos.consumer.procesamiento", topic, "failure", inicio));
+        });
+    }
+
+    public void recordBatch(int registros, int filas) {
+        loteRegistros.record(registros);
+        loteFilas.record(filas);
+    }
+
+    public void recordConsumerError(String topic, Throwable error) {
+        Counter.builder("productos.consumer.errores")
+                .description("Eventos que fallan al aplicarse en la proyección")
+                .tag("topic", topic)
+                .tag("excepcion", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    public void recordDeadLetter(String topic, String excepcion) {
+        Counter.builder("productos.consumer.dlt")
+                .description("Eventos enviados a la DLT sin aplicarse en la proyección")
+                .tag("topic", topic)
+                .tag("excepcion", excepcion)
+                .register(registry)
+                .increment();
+    }
+
+    // comandoTs: cabecera x-comando-ts del evento (epoch millis en que ProductService recibió el comando)
+    public void recordVisibilityLag(String topic, byte[] comandoTs) {
+        if (comandoTs == null) {
+            return;
+        }
+        long lag;
+        try {
+            lag = System.currentTimeMillis() - Long.parseLong(new String(comandoTs, StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        Timer.builder("productos.proyeccion.lag")
+                .description("Tiempo desde el comando HTTP hasta que ProductConsumer lo persiste")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(Duration.ofMillis(Math.max(0, lag)));
+    }
+
+    private void recordHandler(ServerRequest request, HttpStatusCode status, long inicio) {
+        String ruta = request.attribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE)
+                .map(pattern -> ((PathPattern) pattern).getPatternString())
+                .orElse("UNKNOWN");
+        Timer.builder("productos.http.handler")
+                .tag("route", ruta)
+                .tag("method", request.method().name())
+                .tag("status", status != null ? String.valueOf(status.value()) : "ERROR")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    private void record(String nombre, String topic, String resultado, long inicio) {
+        Timer.builder(nombre)
+                .tag("topic", topic)
+                .tag(RESULT, resultado)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.notification;
+
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Comandos de esta réplica a la espera de que la proyección aplique su evento.
+ * Cada comando se publica con una correlación (cabecera x-correlacion). La completa el consumidor
+ * al terminar la escritura si el evento le llega a esta réplica y, si lo aplica otra, ProductCacheSyncListener
+ * (que reciben todas) al verlo en la base. La entrada se borra al completar o vencer el plazo, así
+ * el registro nunca crece más que las peticiones en curso.
+ */
+@Component
+public class PendingProjections {
+
+    private final Map<String, Sinks.Empty<Void>> pendientes = new ConcurrentHashMap<>();
+
+    /**
+     * Registra una correlación, publica con ella y espera su confirmación.
+     *
+     * @return true si el consumidor la confirmó dentro del plazo, false si venció
+     */
+    public Mono<Boolean> publishAndAwait(Function<String, Mono<Void>> envio, Duration espera) {
+        return Mono.using(this::registrar,
+                correlacion -> envio.apply(correlacion)
+                        .then(pendientes.get(correlacion).asMono())
+                        .thenReturn(true)
+                        .timeout(espera, Mono.just(false)),
+                pendientes::remove);
+    }
+
+    public void complete(byte[] correlacion) {
+        if (correlacion == null) {
+            return;
+        }
+        Sinks.Empty<Void> sink = pendientes.remove(new String(correlacion, StandardCharsets.UTF_8));
+        if (sink != null) {
+            sink.tryEmitEmpty();
+        }
+    }
+
+    // La correlación espera en esta réplica
+    public boolean pendiente(byte[] correlacion) {
+        return correlacion != null && pendientes.containsKey(new String(correlacion, StandardCharsets.UTF_8));
+    }
+
+    public int size() {
+        return pendientes.size();
+    }
+
+    private String registrar() {
+        String correlacion = UUID.randomUUID().toString();
+        pendientes.put(correlacion, Sinks.empty());
+        return correlacion;
+    }
+}
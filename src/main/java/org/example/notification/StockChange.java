@@ -0,0 +1,23 @@
+package org.example.notification;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StockChange {
+    private Long id;
+    private Integer stock;
+    // Último stock conocido por esta réplica; null si es el primer cambio que ve
+    private Integer stockAnterior;
+    private LocalDateTime fecha;
+
+    // El stock quedó por debajo del umbral y antes no lo estaba
+    public boolean cruzaUmbral(int umbral) {
+        return stock != null && stock < umbral && (stockAnterior == null || stockAnterior >= umbral);
+    }
+}
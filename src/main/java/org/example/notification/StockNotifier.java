@@ -0,0 +1,49 @@
+package org.example.notification;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Difunde los cambios de stock a los suscriptores del stream SSE.
+ * El sink multicast entrega a cada suscriptor según su propia demanda: uno lento
+ * no frena a los demás, y cuando su buffer se llena se descartan sus eventos según
+ * productos.stock-eventos.politica (DROP_OLDEST o DROP_LATEST).
+ */
+@Component
+public class StockNotifier {
+
+    private final Sinks.Many<StockChange> sink = Sinks.many().multicast().directBestEffort();
+    private final Cache<Long, Integer> ultimoStock;
+    private final int buffer;
+    private final BufferOverflowStrategy politica;
+
+    public StockNotifier(@Value("${productos.stock-eventos.buffer:256}") int buffer,
+                         @Value("${productos.stock-eventos.politica:DROP_OLDEST}") BufferOverflowStrategy politica,
+                         @Value("${productos.stock-eventos.productos-recordados:100000}") long productosRecordados) {
+        this.buffer = buffer;
+        this.politica = politica;
+        this.ultimoStock = Caffeine.newBuilder().maximumSize(productosRecordados).build();
+    }
+
+    public void publish(Long id, Integer stock) {
+        if (id == null || stock == null) {
+            return;
+        }
+        Integer anterior = ultimoStock.asMap().put(id, stock);
+        // Los listeners de Kafka emiten desde varios hilos: se reintenta ante emisiones concurrentes
+        sink.emitNext(new StockChange(id, stock, anterior, LocalDateTime.now()),
+                Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+    public Flux<StockChange> subscribe() {
+        return sink.asFlux().onBackpressureBuffer(buffer, dropped -> { }, politica);
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.producer;
+
+import org.example.classes.OutboxEvento;
+import org.example.events.ProductEvent;
+import org.example.repository.OutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Drena la tabla outbox_eventos hacia Kafka en segundo plano (productos.outbox.enabled=true).
+ * En cada intervalo envía lotes mientras los encuentre llenos; con varias réplicas solo drena una
+ * (OutboxRepository.relay) y las demás lo intentan en el siguiente intervalo.
+ */
+@Component
+@ConditionalOnProperty(name = "productos.outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outbox;
+    private final ProductProducer producer;
+    private final Duration intervalo;
+    private final int tamanoLote;
+    private final int concurrencia;
+    private Disposable tarea;
+
+    public OutboxRelay(OutboxRepository outbox, ProductProducer producer,
+                       @Value("${productos.outbox.intervalo:200ms}") Duration intervalo,
+                       @Value("${productos.outbox.tamano-lote:500}") int tamanoLote,
+                       @Value("${productos.outbox.concurrencia:128}") int concurrencia) {
+        this.outbox = outbox;
+        this.producer = producer;
+        this.intervalo = intervalo;
+        this.tamanoLote = tamanoLote;
+        this.concurrencia = concurrencia;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        tarea = Flux.interval(intervalo)
+                .onBackpressureDrop()
+                .concatMap(tick -> drain()
+                        .onErrorResume(e -> {
+                            log.warn("Error drenando outbox_eventos, se reintenta en el próximo ciclo", e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (tarea != null) {
+            tarea.dispose();
+        }
+    }
+
+    private Mono<Void> drain() {
+        return relayBatch()
+                .expand(enviados -> enviados == tamanoLote ? relayBatch() : Mono.empty())
+                .then();
+    }
+
+    private Mono<Integer> relayBatch() {
+        return outbox.relay(tamanoLote, concurrencia, this::send);
+    }
+
+    private Mono<Void> send(OutboxEvento evento, ProductEvent payload) {
+        return producer.send(evento.getTopic(), payload,
+                evento.getComandoTs() != null ? evento.getComandoTs() : System.currentTimeMillis(),
+                evento.getCorrelacion());
+    }
+}
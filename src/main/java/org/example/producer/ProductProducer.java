@@ -2,37 +2,117 @@ package org.example.producer;
 
 import org.example.events.ProductCreatedEvent;
 import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductEvent;
+import org.example.events.ProductStockAdjustedEvent;
 import org.example.events.ProductStockUpdatedEvent;
 import org.example.events.ProductUpdatedEvent;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.example.exception.PublicacionException;
+import org.example.metrics.ProductMetrics;
+import org.example.repository.OutboxRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Publica los eventos de producto. Cada envío es un Mono que termina cuando el broker
+ * confirma el registro (o cuando el evento queda guardado en la outbox, si está habilitada)
+ * y falla con PublicacionException en caso contrario.
+ * Cada registro lleva la cabecera x-comando-ts con el instante del comando, para medir
+ * en el consumidor cuánto tarda en ser visible en la proyección.
+ * Todos los eventos de producto van a un único tópico (TOPIC) con el id como clave: los de un
+ * producto quedan en una sola partición, en el orden en que se publicaron, y los consumidores
+ * los aplican en ese orden aunque sean de tipos distintos (un alta antes que su actualización).
+ */
 @Component
 public class ProductProducer {
 
+    public static final String COMANDO_TS_HEADER = "x-comando-ts";
+    public static final String CORRELACION_HEADER = "x-correlacion";
+    public static final String TOPIC = "product-events";
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private static final String CREATED_TOPIC = "product-created";
-    private static final String UPDATED_TOPIC = "product-updated";
-    private static final String DELETED_TOPIC = "product-deleted";
-    private static final String STOCK_UPDATED_TOPIC = "product-stock-updated";
+    private final OutboxRepository outbox;
+    private final ProductMetrics metrics;
+    private final Scheduler scheduler;
+    private final boolean outboxEnabled;
+    private final Duration sendTimeout;
 
-    public ProductProducer(KafkaTemplate<String, Object> kafkaTemplate) {
+    public ProductProducer(KafkaTemplate<String, Object> kafkaTemplate, OutboxRepository outbox, ProductMetrics metrics,
+                           @Qualifier("kafkaProducerScheduler") Scheduler scheduler,
+                           @Value("${productos.outbox.enabled:false}") boolean outboxEnabled,
+                           @Value("${productos.kafka.send-timeout:5s}") Duration sendTimeout) {
         this.kafkaTemplate = kafkaTemplate;
+        this.outbox = outbox;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.outboxEnabled = outboxEnabled;
+        this.sendTimeout = sendTimeout;
+    }
+
+    // Con outbox el envío es un INSERT que puede ir en la transacción del comando
+    public boolean isOutboxEnabled() {
+        return outboxEnabled;
+    }
+
+    public Mono<Void> sendProductCreatedEvent(ProductCreatedEvent event) {
+        return publish(TOPIC, event);
+    }
+
+    public Mono<Void> sendProductUpdatedEvent(ProductUpdatedEvent event) {
+        return publish(TOPIC, event);
+    }
+
+    public Mono<Void> sendProductDeletedEvent(ProductDeletedEvent event) {
+        return publish(TOPIC, event);
+    }
+
+    public Mono<Void> sendProductStockUpdatedEvent(ProductStockUpdatedEvent event) {
+        return publish(TOPIC, event);
     }
 
-    public void sendProductCreatedEvent(ProductCreatedEvent event) {
-        kafkaTemplate.send(CREATED_TOPIC, event);
+    public Mono<Void> sendProductStockAdjustedEvent(ProductStockAdjustedEvent event) {
+        return publish(TOPIC, event);
     }
 
-    public void sendProductUpdatedEvent(ProductUpdatedEvent event) {
-        kafkaTemplate.send(UPDATED_TOPIC, event);
+    // La correlación de un comando que espera a la proyección llega en el contexto de Reactor
+    // (clave CORRELACION_HEADER), así los métodos de envío no cambian para el resto
+    private Mono<Void> publish(String topic, ProductEvent event) {
+        return Mono.deferContextual(ctx -> {
+            long comandoTs = System.currentTimeMillis();
+            String correlacion = ctx.getOrDefault(CORRELACION_HEADER, null);
+            if (outboxEnabled) {
+                return outbox.save(topic, event, comandoTs, correlacion)
+                        .onErrorMap(e -> new PublicacionException(topic, e));
+            }
+            return send(topic, event, comandoTs, correlacion);
+        });
     }
 
-    public void sendProductDeletedEvent(ProductDeletedEvent event) {
-        kafkaTemplate.send(DELETED_TOPIC, event);
+    // kafkaTemplate.send puede bloquear (metadatos del tópico, buffer.memory lleno), por eso se invoca
+    // en un scheduler acotado y nunca en el event loop; si su cola está llena falla en el acto
+    Mono<Void> send(String topic, ProductEvent event, long comandoTs, String correlacion) {
+        Mono<Void> envio = Mono.fromFuture(() -> kafkaTemplate.send(record(topic, event, comandoTs, correlacion)))
+                .subscribeOn(scheduler)
+                .timeout(sendTimeout)
+                .then();
+        return metrics.timeSend(topic, envio)
+                .onErrorMap(e -> !(e instanceof PublicacionException), e -> new PublicacionException(topic, e));
     }
 
-    public void sendProductStockUpdatedEvent(ProductStockUpdatedEvent event) {
-        kafkaTemplate.send(STOCK_UPDATED_TOPIC, event);
+    private static ProducerRecord<String, Object> record(String topic, ProductEvent event, long comandoTs, String correlacion) {
+        String key = event.getId() != null ? event.getId().toString() : null;
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, key, event);
+        record.headers().add(COMANDO_TS_HEADER, Long.toString(comandoTs).getBytes(StandardCharsets.UTF_8));
+        if (correlacion != null) {
+            record.headers().add(CORRELACION_HEADER, correlacion.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
     }
 }
@@ -0,0 +1,46 @@
+package org.example.rebuild;
+
+import org.example.classes.EstadoReconstruccion;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Endpoint de administración de la reconstrucción de la proyección.
+ * GET /actuator/proyeccion devuelve el progreso; POST /actuator/proyeccion la arranca,
+ * opcionalmente con {"desde": "2025-01-31T10:00:00Z"} para releer solo desde ese instante.
+ * Por defecto solo lectura (management.endpoint.proyeccion.access).
+ */
+@Component
+@Endpoint(id = "proyeccion")
+public class ProjectionEndpoint {
+
+    private final ProjectionRebuilder rebuilder;
+
+    public ProjectionEndpoint(ProjectionRebuilder rebuilder) {
+        this.rebuilder = rebuilder;
+    }
+
+    @ReadOperation
+    public EstadoReconstruccion estado() {
+        return rebuilder.estado();
+    }
+
+    @WriteOperation
+    public EstadoReconstruccion reconstruir(@Nullable String desde) {
+        if (desde == null || desde.isBlank()) {
+            return rebuilder.iniciar(null);
+        }
+        try {
+            return rebuilder.iniciar(Instant.parse(desde));
+        } catch (DateTimeParseException e) {
+            throw new InvalidEndpointRequestException("desde debe ser un instante ISO-8601: " + desde, "desde inválido");
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.example.rebuild;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
+import org.example.classes.EstadoReconstruccion;
+import org.example.classes.EstadoReconstruccion.Fase;
+import org.example.consumer.ProductBatch;
+import org.example.producer.ProductProducer;
+import org.example.repository.ProductBatchWriter;
+import org.example.repository.ProjectionTableRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reconstruye la proyección productos a partir de los tópicos (actuator /actuator/proyeccion).
+ * Un consumidor propio (assign, sin commits) lee product-events desde el principio
+ * o desde un instante, en el orden de cada partición; ProductBatch fusiona los eventos por id y
+ * ProductBatchWriter los escribe en la tabla sombra con sentencias multi-fila. Fases:
+ * 1. Carga hasta el final que tenían los tópicos al empezar, sin índices ni triggers.
+ * 2. Puesta al día hasta quedar a menos de umbral-al-dia registros del final.
+ * 3. Índices y triggers, y otra puesta al día.
+ * 4. En una transacción que bloquea las escrituras en productos: últimos registros e intercambio.
+ * Los listeners de product-group (y de sus tópicos de reintento) de esta réplica se pausan durante el intercambio; los de otras
+ * réplicas esperan el bloqueo y siguen sobre la tabla nueva. Lo que reaplican desde su último
+ * offset confirmado ya está en la tabla sombra, y los eventos son idempotentes.
+ * Desde un instante, la tabla sombra parte de una copia de productos en lugar de vacía.
+ */
+@Component
+public class ProjectionRebuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectionRebuilder.class);
+
+    private static final List<String> TOPICS = List.of(ProductProducer.TOPIC);
+    private static final String GRUPO = "product-group";
+    private static final Duration POLL = Duration.ofMillis(500);
+
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final ProductBatchWriter batchWriter;
+    private final ProjectionTableRepository tablas;
+    private final TransactionalOperator transactionalOperator;
+    private final ProductCache cache;
+    private final CatalogVersion catalogVersion;
+    private final KafkaListenerEndpointRegistry registry;
+    private final int maxPollRecords;
+    private final int eventosPorLote;
+    private final long umbralAlDia;
+    private final Duration esperaBloqueo;
+
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(tarea -> new Thread(tarea, "proyeccion-reconstruccion"));
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+    private final AtomicLong eventos = new AtomicLong();
+    private final AtomicLong filas = new AtomicLong();
+    private final AtomicLong pendientes = new AtomicLong();
+    private volatile Fase fase = Fase.INACTIVA;
+    private volatile Instant desde;
+    private volatile Instant inicio;
+    private volatile Instant fin;
+    private volatile String error;
+
+    public ProjectionRebuilder(ConsumerFactory<Object, Object> consumerFactory, ProductBatchWriter batchWriter,
+                               ProjectionTableRepository tablas, TransactionalOperator transactionalOperator,
+                               ProductCache cache, CatalogVersion catalogVersion, KafkaListenerEndpointRegistry registry,
+                               @Value("${productos.reconstruccion.max-poll-records:5000}") int maxPollRecords,
+                               @Value("${productos.reconstruccion.eventos-por-lote:50000}") int eventosPorLote,
+                               @Value("${productos.reconstruccion.umbral-al-dia:10000}") long umbralAlDia,
+                               @Value("${productos.reconstruccion.espera-bloqueo:10s}") Duration esperaBloqueo) {
+        this.consumerFactory = consumerFactory;
+        this.batchWriter = batchWriter;
+        this.tablas = tablas;
+        this.transactionalOperator = transactionalOperator;
+        this.cache = cache;
+        this.catalogVersion = catalogVersion;
+        this.registry = registry;
+        this.maxPollRecords = maxPollRecords;
+        this.eventosPorLote = eventosPorLote;
+        this.umbralAlDia = umbralAlDia;
+        this.esperaBloqueo = esperaBloqueo;
+    }
+
+    /**
+     * Arranca la reconstrucción en segundo plano; si ya hay una en curso solo devuelve su estado.
+     * @param desde instante desde el que releer los tópicos; null para leerlos enteros
+     */
+    public synchronized EstadoReconstruccion iniciar(Instant desde) {
+        if (!enCurso.compareAndSet(false, true)) {
+            return estado();
+        }
+        eventos.set(0);
+        filas.set(0);
+        pendientes.set(0);
+        this.desde = desde;
+        this.inicio = Instant.now();
+        this.fin = null;
+        this.error = null;
+        this.fase = Fase.PREPARANDO;
+        executor.execute(() -> ejecutar(desde));
+        return estado();
+    }
+
+    public EstadoReconstruccion estado() {
+        long leidos = eventos.get();
+        long restantes = pendientes.get();
+        double progreso = fase == Fase.COMPLETADA ? 1.0
+                : leidos + restantes == 0 ? 0.0 : (double) leidos / (leidos + restantes);
+        return new EstadoReconstruccion(fase, desde, inicio, fin, leidos, filas.get(), restantes, progreso, error);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void ejecutar(Instant desde) {
+        Properties propiedades = new Properties();
+        propiedades.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        propiedades.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        propiedades.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        List<MessageListenerContainer> pausados = List.of();
+        try (Consumer<Object, Object> consumer = consumerFactory.createConsumer(
+                GRUPO + "-reconstruccion", null, "-reconstruccion", propiedades)) {
+            tablas.crear(desde != null).block();
+            List<TopicPartition> particiones = particiones(consumer);
+            consumer.assign(particiones);
+            posicionar(consumer, particiones, desde);
+
+            fase = Fase.CARGANDO;
+            replay(consumer, consumer.endOffsets(particiones));
+            fase = Fase.PONIENDO_AL_DIA;
+            alDia(consumer, particiones);
+
+            fase = Fase.INDEXANDO;
+            List<String> indices = tablas.indexar().block();
+            fase = Fase.PONIENDO_AL_DIA;
+            alDia(consumer, particiones);
+
+            fase = Fase.INTERCAMBIANDO;
+            pausados = pausar();
+            // Con productos bloqueada lo que queda se lee de Kafka (poll bloqueante, fuera del event loop)
+            // y se escribe en la sombra con la conexión de esta transacción: con el bloqueo tomado,
+            // otra conexión del pool podría no llegar a estar disponible
+            tablas.bloquear(esperaBloqueo)
+                    .then(Mono.fromCallable(() -> leer(consumer, consumer.endOffsets(particiones), Integer.MAX_VALUE))
+                            .subscribeOn(Schedulers.boundedElastic()))
+                    .flatMap(this::escribir)
+                    .then(tablas.intercambiar(indices))
+                    .as(transactionalOperator::transactional)
+                    .block();
+            cache.invalidateAll();
+            catalogVersion.marcar();
+            fase = Fase.COMPLETADA;
+            log.info("Proyección reconstruida: {} eventos, {} filas escritas", eventos.get(), filas.get());
+        } catch (RuntimeException e) {
+            log.error("Reconstrucción de la proyección fallida en fase {}", fase, e);
+            error = e.getMessage();
+            fase = Fase.FALLIDA;
+        } finally {
+            pausados.forEach(MessageListenerContainer::resume);
+            fin = Instant.now();
+            enCurso.set(false);
+        }
+    }
+
+    private List<TopicPartition> particiones(Consumer<Object, Object> consumer) {
+        List<TopicPartition> particiones = new ArrayList<>();
+        for (String topic : TOPICS) {
+            for (PartitionInfo info : consumer.partitionsFor(topic)) {
+                particiones.add(new TopicPartition(topic, info.partition()));
+            }
+        }
+        return particiones;
+    }
+
+    private void posicionar(Consumer<Object, Object> consumer, List<TopicPartition> particiones, Instant desde) {
+        if (desde == null) {
+            consumer.seekToBeginning(particiones);
+            return;
+        }
+        Map<TopicPartition, Long> instantes = new HashMap<>();
+        particiones.forEach(particion -> instantes.put(particion, desde.toEpochMilli()));
+        Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(instantes);
+        Map<TopicPartition, Long> finales = consumer.endOffsets(particiones);
+        for (TopicPartition particion : particiones) {
+            // Sin registros posteriores al instante: no hay nada que releer en esa partición
+            OffsetAndTimestamp offset = offsets.get(particion);
+            consumer.seek(particion, offset != null ? offset.offset() : finales.get(particion));
+        }
+    }
+
+    // Repite la lectura hasta quedar cerca del final; lo que falte se lee con productos bloqueada
+    private void alDia(Consumer<Object, Object> consumer, List<TopicPartition> particiones) {
+        while (true) {
+            Map<TopicPartition, Long> objetivo = consumer.endOffsets(particiones);
+            pendientes(consumer, objetivo);
+            if (pendientes.get() <= umbralAlDia) {
+                return;
+            }
+            replay(consumer, objetivo);
+        }
+    }
+
+    private void replay(Consumer<Object, Object> consumer, Map<TopicPartition, Long> objetivo) {
+        escribir(leer(consumer, objetivo, eventosPorLote)).block();
+    }
+
+    // Lee hasta objetivo escribiendo cada tamanoLote eventos; devuelve lo leído que queda por escribir.
+    // Cada partición llega en orden de offset y los eventos de un producto están en una sola partición,
+    // así que el orden del poll ya es el de cada producto
+    private List<ConsumerRecord<Object, Object>> leer(Consumer<Object, Object> consumer, Map<TopicPartition, Long> objetivo,
+                                                      int tamanoLote) {
+        List<ConsumerRecord<Object, Object>> lote = new ArrayList<>();
+        Set<TopicPartition> pendientes = pendientes(consumer, objetivo);
+        while (!pendientes.isEmpty()) {
+            Set<TopicPartition> terminadas = new HashSet<>(objetivo.keySet());
+            terminadas.removeAll(pendientes);
+            consumer.pause(terminadas);
+            for (ConsumerRecord<Object, Object> registro : consumer.poll(POLL)) {
+                lote.add(registro);
+            }
+            pendientes = pendientes(consumer, objetivo);
+            if (lote.size() >= tamanoLote) {
+                escribir(lote).block();
+                lote = new ArrayList<>();
+            }
+        }
+        consumer.resume(consumer.paused());
+        return lote;
+    }
+
+    // Sin transacción propia si ya hay una en curso: ProductBatchWriter se une a ella.
+    // Las filas guardan la posición de su último evento, como las de los consumidores
+    private Mono<Void> escribir(List<ConsumerRecord<Object, Object>> lote) {
+        if (lote.isEmpty()) {
+            return Mono.empty();
+        }
+        ProductBatch batch = ProductBatch.coalesceRegistros(lote);
+        return batchWriter.apply(batch, ProjectionTableRepository.SOMBRA)
+                .doOnSuccess(v -> {
+                    eventos.addAndGet(lote.size());
+                    filas.addAndGet(batch.size());
+                });
+    }
+
+    private Set<TopicPartition> pendientes(Consumer<Object, Object> consumer, Map<TopicPartition, Long> objetivo) {
+        Set<TopicPartition> pendientes = new HashSet<>();
+        long restantes = 0;
+        for (Map.Entry<TopicPartition, Long> entrada : objetivo.entrySet()) {
+            long posicion = consumer.position(entrada.getKey());
+            if (posicion < entrada.getValue()) {
+                pendientes.add(entrada.getKey());
+                restantes += entrada.getValue() - posicion;
+            }
+        }
+        this.pendientes.set(restantes);
+        return pendientes;
+    }
+
+    private List<MessageListenerContainer> pausar() {
+        List<MessageListenerContainer> pausados = registry.getListenerContainers().stream()
+                .filter(contenedor -> contenedor.getGroupId() != null && contenedor.getGroupId().startsWith(GRUPO)
+                        && contenedor.isRunning())
+                .toList();
+        pausados.forEach(MessageListenerContainer::pause);
+        return pausados;
+    }
+}
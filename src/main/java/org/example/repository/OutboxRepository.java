@@ -0,0 +1,125 @@
+package org.example.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.classes.OutboxEvento;
+import org.example.events.ProductEvent;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Tabla outbox_eventos: eventos pendientes de publicar en Kafka.
+ * Drena una sola réplica a la vez (bloqueo consultivo de la transacción del lote) y los eventos de
+ * un mismo producto se envían de uno en uno y en orden de inserción, así llegan a su partición en
+ * el orden en que se guardaron.
+ */
+@Repository
+public class OutboxRepository {
+
+    private static final String EVENTS_PACKAGE = "org.example.events.";
+    // Clave del bloqueo consultivo (pg_try_advisory_xact_lock) que elige la réplica que drena
+    private static final long BLOQUEO = 0x6f7574626f78L;
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+
+    public OutboxRepository(DatabaseClient databaseClient, TransactionalOperator transactionalOperator, ObjectMapper objectMapper) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.objectMapper = objectMapper;
+    }
+
+    public Mono<Void> save(String topic, Object event, long comandoTs, String correlacion) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(event))
+                .flatMap(payload -> {
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO outbox_eventos (topic, tipo, payload, comando_ts, correlacion) VALUES ($1, $2, $3, $4, $5)")
+                            .bind(0, topic)
+                            .bind(1, event.getClass().getName())
+                            .bind(2, payload)
+                            .bind(3, comandoTs);
+                    spec = correlacion != null ? spec.bind(4, correlacion) : spec.bindNull(4, String.class);
+                    return spec.then();
+                });
+    }
+
+    /**
+     * Envía hasta {@code limite} eventos y borra los confirmados, todo en una transacción: si algún
+     * envío falla no se borra nada y el lote se reintenta (entrega al menos una vez).
+     * Si otra réplica está drenando no envía nada. Los productos distintos se envían en paralelo
+     * (hasta {@code concurrencia}); los de un mismo producto, en orden y esperando cada confirmación.
+     *
+     * @return cantidad de eventos enviados
+     */
+    public Mono<Integer> relay(int limite, int concurrencia, BiFunction<OutboxEvento, ProductEvent, Mono<Void>> envio) {
+        Mono<Integer> lote = databaseClient.sql("SELECT id, topic, tipo, payload, creado_en, comando_ts, correlacion FROM outbox_eventos ORDER BY id LIMIT $1 FOR UPDATE")
+                .bind(0, limite)
+                .map(row -> new OutboxEvento(
+                        row.get("id", Long.class),
+                        row.get("topic", String.class),
+                        row.get("tipo", String.class),
+                        row.get("payload", String.class),
+                        row.get("creado_en", LocalDateTime.class),
+                        row.get("comando_ts", Long.class),
+                        row.get("correlacion", String.class)))
+                .all()
+                .collectList()
+                .flatMapMany(eventos -> enOrdenPorProducto(eventos, concurrencia, envio))
+                .collectList()
+                .flatMap(ids -> ids.isEmpty()
+                        ? Mono.just(0)
+                        : databaseClient.sql("DELETE FROM outbox_eventos WHERE id = ANY($1)")
+                                .bind(0, ids.toArray(Long[]::new))
+                                .then()
+                                .thenReturn(ids.size()));
+        return databaseClient.sql("SELECT pg_try_advisory_xact_lock($1) AS libre")
+                .bind(0, BLOQUEO)
+                .map(row -> row.get("libre", Boolean.class))
+                .one()
+                .flatMap(libre -> libre ? lote : Mono.just(0))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Agrupa los eventos por producto (la clave del registro en Kafka) y envía cada grupo en orden.
+     * Devuelve los ids de outbox_eventos enviados. Los eventos sin id (altas antiguas) no tienen
+     * clave ni orden en Kafka: van juntos en un grupo.
+     */
+    Flux<Long> enOrdenPorProducto(List<OutboxEvento> eventos, int concurrencia,
+                                  BiFunction<OutboxEvento, ProductEvent, Mono<Void>> envio) {
+        Map<Long, List<Tuple2<OutboxEvento, ProductEvent>>> grupos = new LinkedHashMap<>();
+        for (OutboxEvento evento : eventos) {
+            ProductEvent payload;
+            try {
+                payload = payload(evento);
+            } catch (Exception e) {
+                return Flux.error(e);
+            }
+            grupos.computeIfAbsent(payload.getId(), id -> new ArrayList<>()).add(Tuples.of(evento, payload));
+        }
+        return Flux.fromIterable(grupos.values())
+                .flatMap(grupo -> Flux.fromIterable(grupo)
+                        .concatMap(par -> envio.apply(par.getT1(), par.getT2()).thenReturn(par.getT1().getId())), concurrencia);
+    }
+
+    // Reconstruye el evento original para que el serializador de Kafka mantenga su tipo
+    public ProductEvent payload(OutboxEvento evento) throws JsonProcessingException, ClassNotFoundException {
+        Class<?> tipo = evento.getTipo().startsWith(EVENTS_PACKAGE) ? Class.forName(evento.getTipo()) : null;
+        if (tipo == null || !ProductEvent.class.isAssignableFrom(tipo)) {
+            throw new IllegalArgumentException("Tipo de evento no permitido en outbox: " + evento.getTipo());
+        }
+        return (ProductEvent) objectMapper.readValue(evento.getPayload(), tipo);
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.repository;
+
+import org.example.classes.Producto;
+import org.example.consumer.PosicionEvento;
+import org.example.consumer.ProductBatch;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Aplica un ProductBatch con sentencias multi-fila a través de DatabaseClient,
+ * dentro de una única transacción (la que esté en curso, si la hay). Las filas se parten en bloques para no superar
+ * el límite de parámetros por sentencia de Postgres.
+ * La tabla destino es productos salvo en la reconstrucción, que escribe en la tabla sombra.
+ * En productos el stock absoluto descuenta lo arrendado (ProductRepository.ARRENDADO); en la sombra no,
+ * porque la reconstrucción aplica también los ajustes, que ya llevan el stock neto.
+ * Cada fila guarda la posición del evento (ProductBatch.getPosiciones). En productos se aplican además
+ * las mismas guardas que ProductConsumer: no se escribe un evento anterior al último aplicado
+ * (ProductRepository.POSTERIOR) ni un alta de un producto eliminado (ProductRepository.NO_ELIMINADO).
+ * La reconstrucción relee el tópico en orden sobre una tabla vacía y no las necesita.
+ */
+@Repository
+public class ProductBatchWriter {
+
+    private static final int FILAS_POR_SENTENCIA = 1000;
+    private static final String TABLA = "productos";
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    public ProductBatchWriter(DatabaseClient databaseClient, TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<Void> apply(ProductBatch batch) {
+        return apply(batch, TABLA);
+    }
+
+    public Mono<Void> apply(ProductBatch batch, String tabla) {
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.concat(
+                        delete(tabla, batch.getDeletes().toArray(Long[]::new)),
+                        porBloques(new ArrayList<>(batch.getUpserts().values()), filas -> upsert(tabla, filas, batch.getPosiciones())),
+                        porBloques(batch.getInserts(), filas -> insert(tabla, filas)),
+                        porBloques(new ArrayList<>(batch.getUpdates().values()), filas -> update(tabla, filas, batch.getPosiciones())),
+                        porBloques(new ArrayList<>(batch.getStocks().entrySet()), filas -> updateStock(tabla, filas, batch.getPosiciones())))
+                .then()
+                .as(transactionalOperator::transactional);
+    }
+
+    private Mono<Void> delete(String tabla, Long[] ids) {
+        if (ids.length == 0) {
+            return Mono.empty();
+        }
+        return databaseClient.sql("DELETE FROM " + tabla + " WHERE id = ANY($1)")
+                .bind(0, ids)
+                .then();
+    }
+
+    private Mono<Void> upsert(String tabla, List<Producto> filas, Map<Long, PosicionEvento> posiciones) {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + tabla + " AS productos (id, nombre, descripcion, precio, stock, activo,"
+                + " fecha_creacion, evento_particion, evento_offset) SELECT * FROM (VALUES ");
+        valores(sql, filas.size(), "$%d::bigint", "$%d::varchar", "$%d::text", "$%d::numeric", "$%d::int", "$%d::boolean",
+                "$%d::timestamp", "$%d::int", "$%d::bigint");
+        sql.append(") AS v(id, nombre, descripcion, precio, stock, activo, fecha_creacion, evento_particion, evento_offset)");
+        if (TABLA.equals(tabla)) {
+            sql.append(" WHERE ").append(guarda(ProductRepository.NO_ELIMINADO, "v"));
+        }
+        sql.append(" ON CONFLICT (id) DO UPDATE SET nombre = EXCLUDED.nombre, descripcion = EXCLUDED.descripcion,")
+                .append(" precio = EXCLUDED.precio, stock = ").append(stock(tabla, "EXCLUDED.stock")).append(", activo = EXCLUDED.activo,")
+                .append(deficit(tabla, "EXCLUDED.stock"))
+                .append(" evento_particion = EXCLUDED.evento_particion, evento_offset = EXCLUDED.evento_offset");
+        if (TABLA.equals(tabla)) {
+            sql.append(" WHERE ").append(guarda(ProductRepository.POSTERIOR, "EXCLUDED"));
+        }
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        int i = 0;
+        for (Producto p : filas) {
+            spec = bind(spec, i++, p.getId(), Long.class);
+            spec = bind(spec, i++, p.getNombre(), String.class);
+            spec = bind(spec, i++, p.getDescripcion(), String.class);
+            spec = bind(spec, i++, p.getPrecio(), Double.class);
+            spec = bind(spec, i++, p.getStock(), Integer.class);
+            spec = bind(spec, i++, p.getActivo(), Boolean.class);
+            spec = bind(spec, i++, p.getFechaCreacion(), LocalDateTime.class);
+            spec = posicion(spec, i, posiciones.get(p.getId()));
+            i += 2;
+        }
+        return spec.then();
+    }
+
+    private Mono<Void> insert(String tabla, List<Producto> filas) {
+        StringBuilder sql = new StringBuilder("INSERT INTO " + tabla + " (nombre, descripcion, precio, stock, activo, fecha_creacion) VALUES ");
+        valores(sql, filas.size(), "$%d::varchar", "$%d::text", "$%d::numeric", "$%d::int", "$%d::boolean", "$%d::timestamp");
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        int i = 0;
+        for (Producto p : filas) {
+            spec = bind(spec, i++, p.getNombre(), String.class);
+            spec = bind(spec, i++, p.getDescripcion(), String.class);
+            spec = bind(spec, i++, p.getPrecio(), Double.class);
+            spec = bind(spec, i++, p.getStock(), Integer.class);
+            spec = bind(spec, i++, p.getActivo(), Boolean.class);
+            spec = bind(spec, i++, p.getFechaCreacion(), LocalDateTime.class);
+        }
+        return spec.then();
+    }
+
+    private Mono<Void> update(String tabla, List<Producto> filas, Map<Long, PosicionEvento> posiciones) {
+        // Sin stock (null) se conserva el guardado
+        StringBuilder sql = new StringBuilder("UPDATE " + tabla + " AS productos SET nombre = v.nombre, descripcion = v.descripcion, precio = v.precio,")
+                .append(" stock = CASE WHEN v.stock IS NULL THEN productos.stock ELSE ").append(stock(tabla, "v.stock")).append(" END,")
+                .append(deficit(tabla, "v.stock"))
+                .append(" evento_particion = v.evento_particion, evento_offset = v.evento_offset FROM (VALUES ");
+        valores(sql, filas.size(), "$%d::bigint", "$%d::varchar", "$%d::text", "$%d::numeric", "$%d::int", "$%d::int", "$%d::bigint");
+        sql.append(") AS v(id, nombre, descripcion, precio, stock, evento_particion, evento_offset) WHERE productos.id = v.id")
+                .append(posterior(tabla));
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        int i = 0;
+        for (Producto p : filas) {
+            spec = bind(spec, i++, p.getId(), Long.class);
+            spec = bind(spec, i++, p.getNombre(), String.class);
+            spec = bind(spec, i++, p.getDescripcion(), String.class);
+            spec = bind(spec, i++, p.getPrecio(), Double.class);
+            spec = bind(spec, i++, p.getStock(), Integer.class);
+            spec = posicion(spec, i, posiciones.get(p.getId()));
+            i += 2;
+        }
+        return spec.then();
+    }
+
+    private Mono<Void> updateStock(String tabla, List<Map.Entry<Long, Integer>> filas, Map<Long, PosicionEvento> posiciones) {
+        StringBuilder sql = new StringBuilder("UPDATE " + tabla + " AS productos SET stock = ")
+                .append(stock(tabla, "v.stock")).append(",")
+                .append(deficit(tabla, "v.stock"))
+                .append(" evento_particion = v.evento_particion, evento_offset = v.evento_offset FROM (VALUES ");
+        valores(sql, filas.size(), "$%d::bigint", "$%d::int", "$%d::int", "$%d::bigint");
+        sql.append(") AS v(id, stock, evento_particion, evento_offset) WHERE productos.id = v.id").append(posterior(tabla));
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        int i = 0;
+        for (Map.Entry<Long, Integer> fila : filas) {
+            spec = bind(spec, i++, fila.getKey(), Long.class);
+            spec = bind(spec, i++, fila.getValue(), Integer.class);
+            spec = posicion(spec, i, posiciones.get(fila.getKey()));
+            i += 2;
+        }
+        return spec.then();
+    }
+
+    private static String posterior(String tabla) {
+        return TABLA.equals(tabla) ? " AND " + guarda(ProductRepository.POSTERIOR, "v") : "";
+    }
+
+    // Las guardas de ProductRepository con las columnas de la fila nueva (v o EXCLUDED) en lugar de parámetros
+    static String guarda(String sql, String fila) {
+        return sql.replace(":id", fila + ".id")
+                .replace(":particion", fila + ".evento_particion")
+                .replace(":offset", fila + ".evento_offset");
+    }
+
+    private static DatabaseClient.GenericExecuteSpec posicion(DatabaseClient.GenericExecuteSpec spec, int index, PosicionEvento posicion) {
+        return bind(bind(spec, index, posicion != null ? posicion.particion() : null, Integer.class),
+                index + 1, posicion != null ? posicion.offset() : null, Long.class);
+    }
+
+    // La fila destino se llama productos en todas las sentencias, también sobre la sombra
+    private static String stock(String tabla, String valor) {
+        return TABLA.equals(tabla) ? "GREATEST(" + valor + " - " + ProductRepository.ARRENDADO + ", 0)" : valor;
+    }
+
+    // Lo arrendado que supera el stock fijado (ProductRepository.ARRENDADO); sin stock (null) se conserva
+    private static String deficit(String tabla, String valor) {
+        return TABLA.equals(tabla)
+                ? " deficit_arriendo = CASE WHEN " + valor + " IS NULL THEN productos.deficit_arriendo"
+                + " ELSE GREATEST(" + ProductRepository.ARRENDADO + " - " + valor + ", 0) END,"
+                : "";
+    }
+
+    // Agrega "(...), (...)" con un marcador $n por columna
+    private static void valores(StringBuilder sql, int filas, String... columnas) {
+        int parametro = 1;
+        for (int fila = 0; fila < filas; fila++) {
+            sql.append(fila == 0 ? "(" : ", (");
+            for (int col = 0; col < columnas.length; col++) {
+                if (col > 0) {
+                    sql.append(", ");
+                }
+                sql.append(String.format(columnas[col], parametro++));
+            }
+            sql.append(')');
+        }
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec, int index, Object valor, Class<?> tipo) {
+        return valor != null ? spec.bind(index, valor) : spec.bindNull(index, tipo);
+    }
+
+    private static <T> Mono<Void> porBloques(List<T> filas, Function<List<T>, Mono<Void>> sentencia) {
+        return Flux.range(0, (filas.size() + FILAS_POR_SENTENCIA - 1) / FILAS_POR_SENTENCIA)
+                .concatMap(bloque -> sentencia.apply(filas.subList(bloque * FILAS_POR_SENTENCIA,
+                        Math.min(filas.size(), (bloque + 1) * FILAS_POR_SENTENCIA))))
+                .then();
+    }
+}
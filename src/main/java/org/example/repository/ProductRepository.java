@@ -1,9 +1,86 @@
 package org.example.repository;
 
 import org.example.classes.Producto;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
 @Repository
 public interface ProductRepository extends ReactiveCrudRepository<Producto, Long> {
+
+    // Incremento atómico en una sola sentencia, sin SELECT previo
+    @Query("UPDATE productos SET stock = stock + :cantidad WHERE id = :id RETURNING *")
+    Mono<Producto> increaseStock(Long id, int cantidad);
+
+    // Decremento condicional: sin fila si el producto no existe o no hay stock suficiente
+    @Query("UPDATE productos SET stock = stock - :cantidad WHERE id = :id AND stock >= :cantidad RETURNING *")
+    Mono<Producto> decreaseStock(Long id, int cantidad);
+
+    // Las escrituras absolutas de stock fijan el total: lo arrendado por StockReservations (stock_reservado)
+    // ya salió de productos.stock y volverá al devolverse, así que se descuenta aquí. Sin bajar de 0:
+    // si el total nuevo es menor que lo arrendado, el exceso queda en deficit_arriendo y se descuenta de
+    // lo que se devuelva (StockLeaseRepository), así el total no supera el valor fijado
+    String ARRENDADO = "(SELECT COALESCE(sum(s.cantidad), 0) FROM stock_reservado s WHERE s.producto_id = productos.id)";
+
+    // Eventos de product-events: cada escritura guarda la posición (partición, offset) del evento y no
+    // se aplica si la fila ya refleja uno posterior, como un reintento que llega tras eventos más nuevos.
+    // Con otra partición (tópico repartido) o sin posición previa se aplica
+    // ProductBatchWriter comparte ambas guardas sustituyendo los parámetros por columnas
+    String POSTERIOR = "(productos.evento_particion IS DISTINCT FROM :particion OR productos.evento_offset IS NULL"
+            + " OR productos.evento_offset < :offset)";
+
+    // Un alta no recrea un producto eliminado (los ids no se reutilizan)
+    String NO_ELIMINADO = "NOT EXISTS (SELECT 1 FROM productos_eliminados e WHERE e.id = :id)";
+
+    // Sin fila si el producto no existe o el evento es anterior al último aplicado
+    @Query("UPDATE productos SET stock = GREATEST(:stock - " + ARRENDADO + ", 0), " +
+            "deficit_arriendo = GREATEST(" + ARRENDADO + " - :stock, 0), " +
+            "evento_particion = :particion, evento_offset = :offset WHERE id = :id AND " + POSTERIOR + " RETURNING *")
+    Mono<Producto> updateStock(Long id, Integer stock, int particion, long offset);
+
+    // Modificación en una sola sentencia; RETURNING trae la versión asignada por el trigger.
+    // Sin stock (null) se conserva el guardado
+    @Query("UPDATE productos SET nombre = :nombre, descripcion = :descripcion, precio = :precio, " +
+            "stock = CASE WHEN :stock IS NULL THEN stock ELSE GREATEST(:stock - " + ARRENDADO + ", 0) END, " +
+            "deficit_arriendo = CASE WHEN :stock IS NULL THEN deficit_arriendo ELSE GREATEST(" + ARRENDADO + " - :stock, 0) END, " +
+            "evento_particion = :particion, evento_offset = :offset " +
+            "WHERE id = :id AND " + POSTERIOR + " RETURNING *")
+    Mono<Producto> update(Long id, String nombre, String descripcion, Double precio, Integer stock,
+                          int particion, long offset);
+
+    // El producto está en la proyección o ya se eliminó (tiene tombstone)
+    @Query("SELECT EXISTS (SELECT 1 FROM productos WHERE id = :id) OR EXISTS (SELECT 1 FROM productos_eliminados WHERE id = :id)")
+    Mono<Boolean> conocido(Long id);
+
+    // La fila ya refleja el evento en (particion, offset) o uno posterior del producto (misma partición)
+    @Query("SELECT * FROM productos WHERE id = :id AND evento_particion = :particion AND evento_offset >= :offset")
+    Mono<Producto> aplicado(Long id, int particion, long offset);
+
+    // El evento en (particion, offset) ya está en la proyección: la fila refleja esa posición o una
+    // posterior, o el producto se eliminó
+    @Query("SELECT EXISTS (SELECT 1 FROM productos WHERE id = :id AND evento_particion = :particion AND evento_offset >= :offset)" +
+            " OR EXISTS (SELECT 1 FROM productos_eliminados WHERE id = :id)")
+    Mono<Boolean> proyectado(Long id, int particion, long offset);
+
+    // Unidades de un producto arrendadas ahora mismo por las réplicas
+    @Query("SELECT COALESCE(sum(cantidad), 0)::int FROM stock_reservado WHERE producto_id = :id")
+    Mono<Integer> stockArrendado(Long id);
+
+    // Id para un alta antes de publicarla: el cliente lo conoce sin esperar a la proyección
+    @Query("SELECT nextval(pg_get_serial_sequence('productos', 'id'))")
+    Mono<Long> nextId();
+
+    // Alta con id ya asignado; idempotente ante la reentrega del evento. Sin fila si el evento es
+    // anterior al último aplicado o el producto ya se eliminó (los ids no se reutilizan)
+    @Query("INSERT INTO productos (id, nombre, descripcion, precio, stock, activo, fecha_creacion, evento_particion, evento_offset) " +
+            "SELECT :id, :nombre, :descripcion, :precio, :stock, true, CURRENT_TIMESTAMP, :particion, :offset " +
+            "WHERE " + NO_ELIMINADO + " " +
+            "ON CONFLICT (id) DO UPDATE SET nombre = EXCLUDED.nombre, descripcion = EXCLUDED.descripcion, " +
+            "precio = EXCLUDED.precio, stock = GREATEST(EXCLUDED.stock - " + ARRENDADO + ", 0), activo = true, " +
+            "deficit_arriendo = GREATEST(" + ARRENDADO + " - EXCLUDED.stock, 0), " +
+            "evento_particion = EXCLUDED.evento_particion, evento_offset = EXCLUDED.evento_offset " +
+            "WHERE " + POSTERIOR + " RETURNING *")
+    Mono<Producto> upsert(Long id, String nombre, String descripcion, Double precio, Integer stock,
+                          int particion, long offset);
 }
@@ -0,0 +1,137 @@
+package org.example.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL de la reconstrucción de la proyección (ProjectionRebuilder).
+ * La tabla sombra se crea sin índices ni triggers y UNLOGGED para que la carga sea lo más
+ * barata posible; al terminar se copian los índices y triggers de productos tal como están
+ * en el catálogo (así no hay que mantener aquí una lista aparte) y se intercambian los nombres.
+ */
+@Repository
+public class ProjectionTableRepository {
+
+    public static final String SOMBRA = "productos_reconstruccion";
+    public static final String ANTERIOR = "productos_anterior";
+
+    // "... ON public.productos USING ..." / "... ON public.productos FOR EACH ROW ..."
+    private static final Pattern TABLA = Pattern.compile(" ON (ONLY )?(\\w+\\.)?productos ");
+
+    private final DatabaseClient databaseClient;
+
+    public ProjectionTableRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Crea la tabla sombra vacía, con la misma estructura que productos y solo la clave primaria
+     * (la necesita el upsert). Con semilla copia antes las filas actuales de productos.
+     */
+    public Mono<Void> crear(boolean semilla) {
+        Mono<Void> crear = ejecutar("DROP TABLE IF EXISTS " + SOMBRA)
+                .then(ejecutar("CREATE UNLOGGED TABLE " + SOMBRA + " (LIKE productos INCLUDING DEFAULTS"
+                        + " INCLUDING GENERATED INCLUDING IDENTITY INCLUDING CONSTRAINTS,"
+                        + " CONSTRAINT " + SOMBRA + "_pkey PRIMARY KEY (id))"));
+        if (!semilla) {
+            return crear;
+        }
+        // El déficit de los arriendos sigue vigente: stock_reservado no se reconstruye
+        return crear.then(ejecutar("INSERT INTO " + SOMBRA + " (id, nombre, descripcion, precio, stock, activo, fecha_creacion,"
+                + " evento_particion, evento_offset, deficit_arriendo)"
+                + " SELECT id, nombre, descripcion, precio, stock, activo, fecha_creacion, evento_particion, evento_offset,"
+                + " deficit_arriendo FROM productos"));
+    }
+
+    /**
+     * Crea en la tabla sombra los índices (con el sufijo de SOMBRA) y los triggers de productos,
+     * la pasa a LOGGED y actualiza sus estadísticas. Devuelve los nombres de los índices copiados.
+     */
+    public Mono<List<String>> indexar() {
+        Mono<List<String>> indices = databaseClient.sql("SELECT i.relname AS nombre, pg_get_indexdef(i.oid) AS definicion"
+                        + " FROM pg_index x JOIN pg_class i ON i.oid = x.indexrelid"
+                        + " WHERE x.indrelid = 'productos'::regclass AND NOT x.indisprimary")
+                .map((row, meta) -> List.of(row.get("nombre", String.class), row.get("definicion", String.class)))
+                .all()
+                .concatMap(indice -> ejecutar(enSombra(indice.get(1))
+                                .replaceFirst("INDEX " + indice.get(0) + " ", "INDEX " + indice.get(0) + "_" + SOMBRA + " "))
+                        .thenReturn(indice.get(0)))
+                .collectList();
+        Mono<Void> triggers = databaseClient.sql("SELECT pg_get_triggerdef(oid) AS definicion FROM pg_trigger"
+                        + " WHERE tgrelid = 'productos'::regclass AND NOT tgisinternal")
+                .map((row, meta) -> row.get("definicion", String.class))
+                .all()
+                .concatMap(definicion -> ejecutar(enSombra(definicion)))
+                .then();
+        return indices
+                .flatMap(nombres -> triggers
+                        .then(ejecutar("ALTER TABLE " + SOMBRA + " SET LOGGED"))
+                        .then(ejecutar("ANALYZE " + SOMBRA))
+                        .thenReturn(nombres));
+    }
+
+    /**
+     * Bloquea las escrituras sobre productos hasta el final de la transacción; las lecturas siguen.
+     * Debe ejecutarse dentro de la transacción del intercambio.
+     */
+    public Mono<Void> bloquear(Duration espera) {
+        return ejecutar("SET LOCAL lock_timeout = '" + espera.toMillis() + "ms'")
+                .then(ejecutar("LOCK TABLE productos IN EXCLUSIVE MODE"));
+    }
+
+    /**
+     * Sustituye productos por la tabla sombra, dentro de la transacción del intercambio.
+     * La anterior se conserva como productos_anterior (se descarta en la siguiente reconstrucción).
+     * Las sentencias que esperaban el bloqueo resuelven de nuevo el nombre y escriben en la nueva.
+     */
+    public Mono<Void> intercambiar(List<String> indices) {
+        return Flux.concat(
+                        ejecutar("DROP TABLE IF EXISTS " + ANTERIOR),
+                        // Los ids ya entregados por nextId no se reutilizan
+                        ejecutar("SELECT setval(pg_get_serial_sequence('" + SOMBRA + "', 'id'),"
+                                + " GREATEST(nextval(pg_get_serial_sequence('productos', 'id')), COALESCE(max(id), 0)))"
+                                + " FROM " + SOMBRA),
+                        // Baja en el feed de cambios de lo que no sobrevive a la reconstrucción
+                        ejecutar("INSERT INTO productos_eliminados (id, version)"
+                                + " SELECT a.id, nextval('productos_version_seq') FROM productos a"
+                                + " WHERE NOT EXISTS (SELECT 1 FROM " + SOMBRA + " r WHERE r.id = a.id)"
+                                + " ON CONFLICT (id) DO UPDATE SET version = EXCLUDED.version,"
+                                + " eliminado_en = CURRENT_TIMESTAMP, transaccion = pg_current_xact_id()"),
+                        clavePrimaria().flatMap(pk -> ejecutar("ALTER TABLE productos RENAME TO " + ANTERIOR)
+                                .then(ejecutar("ALTER TABLE " + ANTERIOR + " RENAME CONSTRAINT " + pk + " TO " + ANTERIOR + "_pkey"))
+                                .then(ejecutar("ALTER TABLE " + SOMBRA + " RENAME TO productos"))
+                                .then(ejecutar("ALTER TABLE productos RENAME CONSTRAINT " + SOMBRA + "_pkey TO " + pk))),
+                        Flux.fromIterable(indices)
+                                .concatMap(indice -> ejecutar("ALTER INDEX " + indice + " RENAME TO " + indice + "_" + ANTERIOR)
+                                        .then(ejecutar("ALTER INDEX " + indice + "_" + SOMBRA + " RENAME TO " + indice))))
+                .then();
+    }
+
+    private Mono<String> clavePrimaria() {
+        return databaseClient.sql("SELECT conname FROM pg_constraint WHERE conrelid = 'productos'::regclass AND contype = 'p'")
+                .map((row, meta) -> row.get("conname", String.class))
+                .one();
+    }
+
+    private Mono<Void> ejecutar(String sql) {
+        return databaseClient.sql(sql).then();
+    }
+
+    private static String enSombra(String definicion) {
+        Matcher matcher = TABLA.matcher(definicion);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Definición sin la tabla productos: " + definicion);
+        }
+        String esquema = matcher.group(2) != null ? matcher.group(2) : "";
+        String only = matcher.group(1) != null ? matcher.group(1) : "";
+        return definicion.substring(0, matcher.start()) + " ON " + only + esquema + SOMBRA + " "
+                + definicion.substring(matcher.end());
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Arriendos de stock de StockReservations sobre productos y stock_reservado.
+ * Arrendar descuenta de productos.stock y lo anota a nombre de la réplica en la misma sentencia:
+ * el CHECK (stock >= 0) de productos sigue garantizando que no se vende más de lo que hay.
+ * Las operaciones periódicas agregan todos los productos en una sola sentencia multi-fila.
+ */
+@Repository
+public class StockLeaseRepository {
+
+    // Lo devuelto paga primero el déficit (ProductRepository.ARRENDADO); solo el resto vuelve al stock
+    private static final String DEVOLVER = "stock = p.stock + GREATEST(%s - p.deficit_arriendo, 0),"
+            + " deficit_arriendo = GREATEST(p.deficit_arriendo - %s, 0)";
+
+    private final DatabaseClient databaseClient;
+
+    public StockLeaseRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Arrienda al menos cantidad unidades y hasta min(bloque, fraccion del stock restante),
+     * nunca más de las que haya. Devuelve (arrendadas, stock restante); vacío si el producto no existe.
+     */
+    public Mono<Tuple2<Integer, Integer>> arrendar(Long id, int cantidad, int bloque, double fraccion, String instancia) {
+        return databaseClient.sql("WITH l AS (SELECT id, stock,"
+                        + "       LEAST(stock, GREATEST($2, LEAST($3, CEIL(stock * $4)::int))) AS cantidad"
+                        + "       FROM productos WHERE id = $1 FOR UPDATE),"
+                        + " p AS (UPDATE productos SET stock = productos.stock - l.cantidad FROM l"
+                        + "       WHERE productos.id = l.id AND l.cantidad > 0 RETURNING productos.id, productos.stock),"
+                        + " r AS (INSERT INTO stock_reservado (producto_id, instancia, cantidad)"
+                        + "       SELECT id, $5, cantidad FROM l WHERE cantidad > 0"
+                        + "       ON CONFLICT (producto_id, instancia) DO UPDATE"
+                        + "       SET cantidad = stock_reservado.cantidad + EXCLUDED.cantidad, renovado_en = CURRENT_TIMESTAMP)"
+                        + " SELECT l.cantidad, COALESCE(p.stock, l.stock) AS stock FROM l LEFT JOIN p ON p.id = l.id")
+                .bind(0, id)
+                .bind(1, cantidad)
+                .bind(2, bloque)
+                .bind(3, fraccion)
+                .bind(4, instancia)
+                .map((row, meta) -> Tuples.of(row.get("cantidad", Integer.class), row.get("stock", Integer.class)))
+                .one();
+    }
+
+    /**
+     * Devuelve a productos unidades arrendadas que no se van a vender, salvo las que cubren el déficit
+     * que dejó fijar un stock menor que lo arrendado (deficit_arriendo).
+     * Emite (id, stock resultante) por producto devuelto.
+     */
+    public Flux<Tuple2<Long, Integer>> devolver(Map<Long, Integer> cantidades, String instancia) {
+        if (cantidades.isEmpty()) {
+            return Flux.empty();
+        }
+        StringBuilder sql = new StringBuilder("WITH v(id, cantidad) AS (VALUES ");
+        int parametro = valores(sql, cantidades.size());
+        sql.append("), r AS (UPDATE stock_reservado s SET cantidad = s.cantidad - v.cantidad, renovado_en = CURRENT_TIMESTAMP")
+                .append(" FROM v WHERE s.producto_id = v.id AND s.instancia = $").append(parametro).append(")")
+                .append(" UPDATE productos p SET ").append(DEVOLVER.replace("%s", "v.cantidad"))
+                .append(" FROM v WHERE p.id = v.id RETURNING p.id, p.stock");
+        return bind(databaseClient.sql(sql.toString()), cantidades, instancia)
+                .map((row, meta) -> Tuples.of(row.get("id", Long.class), row.get("stock", Integer.class)))
+                .all();
+    }
+
+    // Unidades arrendadas ya vendidas: dejan de contar como arrendadas (no vuelven a productos)
+    public Mono<Void> confirmar(Map<Long, Integer> cantidades, String instancia) {
+        if (cantidades.isEmpty()) {
+            return Mono.empty();
+        }
+        StringBuilder sql = new StringBuilder("UPDATE stock_reservado s SET cantidad = s.cantidad - v.cantidad,")
+                .append(" renovado_en = CURRENT_TIMESTAMP FROM (VALUES ");
+        int parametro = valores(sql, cantidades.size());
+        sql.append(") AS v(id, cantidad) WHERE s.producto_id = v.id AND s.instancia = $").append(parametro);
+        return bind(databaseClient.sql(sql.toString()), cantidades, instancia).then();
+    }
+
+    // Marca los arriendos de la réplica como vigentes y borra los ya agotados
+    public Mono<Void> renovar(String instancia) {
+        return databaseClient.sql("DELETE FROM stock_reservado WHERE instancia = $1 AND cantidad = 0")
+                .bind(0, instancia)
+                .then()
+                .then(databaseClient.sql("UPDATE stock_reservado SET renovado_en = CURRENT_TIMESTAMP WHERE instancia = $1")
+                        .bind(0, instancia)
+                        .then());
+    }
+
+    /**
+     * Devuelve a productos lo arrendado por réplicas que no lo renuevan desde hace más de abandono.
+     * Emite (id, stock resultante) por producto recuperado.
+     */
+    public Flux<Tuple2<Long, Integer>> recuperarAbandonados(Duration abandono) {
+        return databaseClient.sql("WITH a AS (DELETE FROM stock_reservado"
+                        + "  WHERE renovado_en < CURRENT_TIMESTAMP - make_interval(secs => $1) RETURNING producto_id, cantidad),"
+                        + " s AS (SELECT producto_id, sum(cantidad)::int AS cantidad FROM a GROUP BY producto_id)"
+                        + " UPDATE productos p SET " + DEVOLVER.replace("%s", "s.cantidad") + " FROM s"
+                        + " WHERE p.id = s.producto_id AND s.cantidad > 0 RETURNING p.id, p.stock")
+                .bind(0, (double) abandono.toSeconds())
+                .map((row, meta) -> Tuples.of(row.get("id", Long.class), row.get("stock", Integer.class)))
+                .all();
+    }
+
+    // Agrega "($1::bigint, $2::int), ..." y devuelve el siguiente número de parámetro
+    private static int valores(StringBuilder sql, int filas) {
+        int parametro = 1;
+        for (int fila = 0; fila < filas; fila++) {
+            sql.append(fila == 0 ? "" : ", ")
+                    .append("($").append(parametro++).append("::bigint, $").append(parametro++).append("::int)");
+        }
+        return parametro;
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec,
+                                                          Map<Long, Integer> cantidades, String instancia) {
+        int i = 0;
+        for (Map.Entry<Long, Integer> fila : cantidades.entrySet()) {
+            spec = spec.bind(i++, fila.getKey()).bind(i++, fila.getValue());
+        }
+        return spec.bind(i, instancia);
+    }
+}
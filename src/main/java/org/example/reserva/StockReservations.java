@@ -0,0 +1,369 @@
+package org.example.reserva;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.cache.ProductCache;
+import org.example.classes.Reserva;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.exception.StockInsuficienteException;
+import org.example.producer.ProductProducer;
+import org.example.repository.StockLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reservas de stock en memoria para productos con mucha demanda.
+ * La réplica arrienda bloques de stock (productos.stock baja y stock_reservado lo anota a su nombre)
+ * y reserva sobre ellos sin ir a la base; solo vuelve a ella cuando se le acaba el bloque.
+ * <ul>
+ *     <li>reservar: aparta unidades del bloque durante un TTL</li>
+ *     <li>confirmar: la venta se da por hecha; se persiste agrupada en el siguiente volcado
+ *     y la respuesta espera a que ese volcado confirme</li>
+ *     <li>liberar / vencer: las unidades vuelven al bloque</li>
+ * </ul>
+ * Cada volcado (productos.reservas.intervalo) persiste las confirmaciones de todos los productos
+ * y devuelve a productos lo arrendado sin uso reciente, en sentencias multi-fila.
+ * Si la réplica cae, otra devuelve a productos lo que tenía arrendado y sin vender (abandono).
+ * Cada arriendo se limita a una fracción del stock restante, así un producto escaso no queda
+ * entero en una réplica mientras las demás (y los decrementos directos) responden 409.
+ * Solo se guarda en memoria la existencia de productos con arriendo: se crea al arrendar y se
+ * retira en el volcado cuando lleva ociosidad sin uso y no le quedan unidades.
+ * Métricas: productos.reservas{resultado}, productos.reservas.activas y productos.reservas.productos.
+ */
+@Service
+public class StockReservations {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservations.class);
+
+    private final StockLeaseRepository leases;
+    private final ProductProducer productProducer;
+    private final ProductCache cache;
+    private final TransactionalOperator transactionalOperator;
+    private final MeterRegistry registry;
+    private final int bloque;
+    private final int franjas;
+    private final double fraccion;
+    private final Duration ttlDefecto;
+    private final Duration ttlMaximo;
+    private final Duration intervalo;
+    private final Duration ociosidad;
+    private final Duration abandono;
+
+    private final String instancia = UUID.randomUUID().toString();
+    private final Map<Long, Existencia> existencias = new ConcurrentHashMap<>();
+    // Un único arriendo en curso por producto: las reservas que se quedan sin unidades a la vez lo comparten
+    private final Map<Long, Mono<Integer>> arriendos = new ConcurrentHashMap<>();
+    private final Map<String, Reserva> reservas = new ConcurrentHashMap<>();
+    private final DelayQueue<Vencimiento> vencimientos = new DelayQueue<>();
+    // Quien confirma espera al volcado que persiste su confirmación
+    private final AtomicReference<Sinks.Empty<Void>> siguienteVolcado = new AtomicReference<>(Sinks.empty());
+    private Disposable volcado;
+    private Disposable recuperacion;
+
+    public StockReservations(StockLeaseRepository leases, ProductProducer productProducer, ProductCache cache,
+                             TransactionalOperator transactionalOperator, MeterRegistry registry,
+                             @Value("${productos.reservas.bloque:50}") int bloque,
+                             @Value("${productos.reservas.franjas:8}") int franjas,
+                             @Value("${productos.reservas.fraccion:0.25}") double fraccion,
+                             @Value("${productos.reservas.ttl:10m}") Duration ttlDefecto,
+                             @Value("${productos.reservas.ttl-maximo:1h}") Duration ttlMaximo,
+                             @Value("${productos.reservas.intervalo:50ms}") Duration intervalo,
+                             @Value("${productos.reservas.ociosidad:30s}") Duration ociosidad,
+                             @Value("${productos.reservas.abandono:2m}") Duration abandono) {
+        this.leases = leases;
+        this.productProducer = productProducer;
+        this.cache = cache;
+        this.transactionalOperator = transactionalOperator;
+        this.registry = registry;
+        this.bloque = bloque;
+        this.franjas = franjas;
+        this.fraccion = fraccion;
+        this.ttlDefecto = ttlDefecto;
+        this.ttlMaximo = ttlMaximo;
+        this.intervalo = intervalo;
+        this.ociosidad = ociosidad;
+        this.abandono = abandono;
+        Gauge.builder("productos.reservas.activas", reservas, Map::size)
+                .description("Reservas de stock pendientes en esta réplica")
+                .register(registry);
+        Gauge.builder("productos.reservas.productos", existencias, Map::size)
+                .description("Productos con stock arrendado en memoria en esta réplica")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        volcado = Flux.interval(intervalo)
+                .onBackpressureDrop()
+                .concatMap(tick -> volcar(false))
+                .subscribe();
+        Duration renovacion = abandono.dividedBy(3);
+        recuperacion = Flux.interval(renovacion, renovacion)
+                .onBackpressureDrop()
+                .concatMap(tick -> recuperar())
+                .subscribe();
+    }
+
+    // Las reservas pendientes se pierden: sus unidades y las libres vuelven a productos
+    @PreDestroy
+    public void stop() {
+        if (volcado != null) {
+            volcado.dispose();
+            recuperacion.dispose();
+        }
+        reservas.values().forEach(reserva -> devolverLibres(reserva.getProductoId(), reserva.getCantidad()));
+        reservas.clear();
+        try {
+            volcar(true).block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            log.warn("No se pudo devolver el stock arrendado al parar; se recuperará por abandono", e);
+        }
+    }
+
+    /**
+     * Aparta cantidad unidades durante ttl (null: el de configuración).
+     * Falla con StockInsuficienteException si no hay unidades; vacío si el producto no existe.
+     */
+    public Mono<Reserva> reservar(Long productoId, int cantidad, Duration ttl) {
+        Duration vigencia = ttl == null ? ttlDefecto : ttl.compareTo(ttlMaximo) > 0 ? ttlMaximo : ttl;
+        return Mono.defer(() -> {
+            if (tomar(productoId, cantidad)) {
+                return Mono.just(retener(productoId, cantidad, vigencia));
+            }
+            return arrendar(productoId, cantidad)
+                    .flatMap(arrendadas -> {
+                        if (tomar(productoId, cantidad)) {
+                            return Mono.just(retener(productoId, cantidad, vigencia));
+                        }
+                        contar("sin_stock");
+                        return Mono.error(new StockInsuficienteException(productoId, cantidad));
+                    });
+        });
+    }
+
+    // false si la reserva no existe en esta réplica (confirmada, liberada, vencida o de otra réplica)
+    public Mono<Boolean> confirmar(String id) {
+        Reserva reserva = reservas.remove(id);
+        if (reserva == null) {
+            return Mono.just(false);
+        }
+        // Primero el contador y después el volcado a esperar: ese volcado ya lo incluye o es uno anterior
+        anotarConfirmadas(reserva.getProductoId(), reserva.getCantidad());
+        contar("confirmada");
+        return siguienteVolcado.get().asMono().thenReturn(true);
+    }
+
+    public boolean liberar(String id) {
+        Reserva reserva = reservas.remove(id);
+        if (reserva == null) {
+            return false;
+        }
+        devolverLibres(reserva.getProductoId(), reserva.getCantidad());
+        contar("liberada");
+        return true;
+    }
+
+    // Las reservas solo se pueden confirmar o liberar en la réplica que las creó
+    public boolean esLocal(String id) {
+        return id.startsWith(instancia + ".");
+    }
+
+    // Sin existencia en memoria no hay unidades: el llamador arrienda
+    private boolean tomar(Long productoId, int cantidad) {
+        Existencia existencia = existencias.get(productoId);
+        if (existencia == null) {
+            return false;
+        }
+        // ultimoUso antes de tomar: el volcado lee las unidades antes que ultimoUso y no retira una existencia en uso
+        existencia.ultimoUso = System.nanoTime();
+        return existencia.libre.tomar(cantidad);
+    }
+
+    // Toda unidad que vuelve a memoria entra con compute, que la ordena con la retirada de existencias
+    // ociosas: nunca se suma a una existencia ya retirada
+    private void devolverLibres(Long productoId, int cantidad) {
+        existencias.compute(productoId, (id, actual) -> {
+            Existencia existencia = actual != null ? actual : new Existencia(franjas);
+            existencia.libre.devolver(cantidad);
+            return existencia;
+        });
+    }
+
+    private void anotarConfirmadas(Long productoId, int cantidad) {
+        existencias.compute(productoId, (id, actual) -> {
+            Existencia existencia = actual != null ? actual : new Existencia(franjas);
+            existencia.confirmadas.addAndGet(cantidad);
+            return existencia;
+        });
+    }
+
+    private Reserva retener(Long productoId, int cantidad, Duration vigencia) {
+        Reserva reserva = new Reserva(instancia + "." + UUID.randomUUID(), productoId, cantidad, Instant.now().plus(vigencia));
+        reservas.put(reserva.getId(), reserva);
+        vencimientos.add(new Vencimiento(reserva));
+        contar("reservada");
+        return reserva;
+    }
+
+    // Arrienda al menos cantidad y como mucho min(bloque, fraccion del stock restante)
+    private Mono<Integer> arrendar(Long productoId, int cantidad) {
+        Mono<Integer> enCurso = arriendos.get(productoId);
+        if (enCurso != null) {
+            return enCurso;
+        }
+        Mono<Integer> arriendo = leases.arrendar(productoId, cantidad, bloque, fraccion, instancia)
+                .flatMap(resultado -> resultado.getT1() > 0
+                        ? stockAjustado(productoId, -resultado.getT1(), resultado.getT2()).thenReturn(resultado)
+                        : Mono.just(resultado))
+                .as(transactionalOperator::transactional)
+                .map(resultado -> {
+                    if (resultado.getT1() > 0) {
+                        devolverLibres(productoId, resultado.getT1());
+                        cache.refresh(productoId, producto -> producto.setStock(resultado.getT2()));
+                    }
+                    return resultado.getT1();
+                })
+                .doFinally(senal -> arriendos.remove(productoId))
+                .cache();
+        Mono<Integer> existente = arriendos.putIfAbsent(productoId, arriendo);
+        return existente != null ? existente : arriendo;
+    }
+
+    Mono<Void> volcar(boolean todo) {
+        vencer();
+        Sinks.Empty<Void> esperando = siguienteVolcado.getAndSet(Sinks.empty());
+        Map<Long, Integer> confirmadas = new HashMap<>();
+        Map<Long, Integer> sobrantes = new HashMap<>();
+        long limiteOcio = System.nanoTime() - ociosidad.toNanos();
+        List<Long> ociosas = new ArrayList<>();
+        existencias.forEach((id, existencia) -> {
+            int vendidas = existencia.confirmadas.getAndSet(0);
+            if (vendidas > 0) {
+                confirmadas.put(id, vendidas);
+            }
+            if (todo || existencia.ultimoUso < limiteOcio) {
+                int libres = existencia.libre.drenar();
+                if (libres > 0) {
+                    sobrantes.put(id, libres);
+                }
+                ociosas.add(id);
+            }
+        });
+        // Las reservas vivas de un producto retirado vuelven (confirmadas o liberadas) con una existencia nueva
+        ociosas.forEach(id -> existencias.computeIfPresent(id, (key, existencia) ->
+                existencia.libre.disponible() == 0 && existencia.confirmadas.get() == 0
+                        && existencia.ultimoUso < limiteOcio ? null : existencia));
+        if (confirmadas.isEmpty() && sobrantes.isEmpty()) {
+            esperando.tryEmitEmpty();
+            return Mono.empty();
+        }
+        return leases.confirmar(confirmadas, instancia)
+                .thenMany(leases.devolver(sobrantes, instancia))
+                .concatMap(fila -> stockAjustado(fila.getT1(), sobrantes.get(fila.getT1()), fila.getT2()).thenReturn(fila))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .doOnNext(filas -> {
+                    refrescar(filas);
+                    esperando.tryEmitEmpty();
+                })
+                .then()
+                .onErrorResume(e -> {
+                    // Se reintenta en el próximo volcado; quien confirmó sigue esperando
+                    log.warn("Error volcando reservas de stock, se reintenta en el próximo ciclo", e);
+                    confirmadas.forEach(this::anotarConfirmadas);
+                    sobrantes.forEach(this::devolverLibres);
+                    siguienteVolcado.get().asMono().doOnTerminate(esperando::tryEmitEmpty).subscribe();
+                    return Mono.empty();
+                });
+    }
+
+    private void vencer() {
+        Vencimiento vencimiento;
+        while ((vencimiento = vencimientos.poll()) != null) {
+            Reserva reserva = vencimiento.reserva();
+            if (reservas.remove(reserva.getId(), reserva)) {
+                devolverLibres(reserva.getProductoId(), reserva.getCantidad());
+                contar("vencida");
+            }
+        }
+    }
+
+    // Renueva los arriendos propios y devuelve a productos los de réplicas caídas
+    private Mono<Void> recuperar() {
+        return leases.renovar(instancia)
+                .thenMany(leases.recuperarAbandonados(abandono))
+                .concatMap(fila -> stockAjustado(fila.getT1(), null, fila.getT2()).thenReturn(fila))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .doOnNext(this::refrescar)
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Error renovando arriendos de stock", e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> stockAjustado(Long productoId, Integer cantidad, Integer stock) {
+        return productProducer.sendProductStockAdjustedEvent(new ProductStockAdjustedEvent(productoId, cantidad, stock));
+    }
+
+    private void refrescar(List<Tuple2<Long, Integer>> filas) {
+        filas.forEach(fila -> cache.refresh(fila.getT1(), producto -> producto.setStock(fila.getT2())));
+    }
+
+    private void contar(String resultado) {
+        Counter.builder("productos.reservas")
+                .tag("resultado", resultado)
+                .register(registry)
+                .increment();
+    }
+
+    private static final class Existencia {
+        private final StripedStock libre;
+        private final AtomicInteger confirmadas = new AtomicInteger();
+        private volatile long ultimoUso = System.nanoTime();
+
+        private Existencia(int franjas) {
+            this.libre = new StripedStock(franjas);
+        }
+    }
+
+    private record Vencimiento(Reserva reserva) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), reserva.getExpira()));
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            return reserva.getExpira().compareTo(((Vencimiento) otro).reserva().getExpira());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.reserva;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Unidades libres de un producto repartidas en franjas, sin bloqueos.
+ * Cada hilo empieza por su franja, así las reservas de un producto muy pedido no compiten
+ * todas por el mismo contador. Ninguna franja baja de cero: el total tampoco.
+ */
+class StripedStock {
+
+    private final AtomicIntegerArray franjas;
+
+    StripedStock(int franjas) {
+        this.franjas = new AtomicIntegerArray(Math.max(1, franjas));
+    }
+
+    /**
+     * Toma cantidad unidades, de una franja o reuniéndolas de varias.
+     * Puede fallar con unidades suficientes si otro hilo las está reuniendo a la vez; el llamador
+     * lo trata como falta de stock local y arrienda más.
+     */
+    boolean tomar(int cantidad) {
+        int n = franjas.length();
+        int inicio = propia();
+        for (int i = 0; i < n; i++) {
+            int franja = (inicio + i) % n;
+            int actual = franjas.get(franja);
+            while (actual >= cantidad) {
+                if (franjas.compareAndSet(franja, actual, actual - cantidad)) {
+                    return true;
+                }
+                actual = franjas.get(franja);
+            }
+        }
+        int reunidas = 0;
+        for (int i = 0; i < n && reunidas < cantidad; i++) {
+            int franja = (inicio + i) % n;
+            int actual = franjas.get(franja);
+            while (actual > 0 && reunidas < cantidad) {
+                int parte = Math.min(actual, cantidad - reunidas);
+                if (franjas.compareAndSet(franja, actual, actual - parte)) {
+                    reunidas += parte;
+                }
+                actual = franjas.get(franja);
+            }
+        }
+        if (reunidas < cantidad) {
+            devolver(reunidas);
+            return false;
+        }
+        return true;
+    }
+
+    void devolver(int cantidad) {
+        if (cantidad > 0) {
+            franjas.addAndGet(propia(), cantidad);
+        }
+    }
+
+    // Retira todas las unidades libres
+    int drenar() {
+        int total = 0;
+        for (int i = 0; i < franjas.length(); i++) {
+            total += franjas.getAndSet(i, 0);
+        }
+        return total;
+    }
+
+    int disponible() {
+        int total = 0;
+        for (int i = 0; i < franjas.length(); i++) {
+            total += franjas.get(i);
+        }
+        return total;
+    }
+
+    private int propia() {
+        return (int) (Thread.currentThread().threadId() % franjas.length());
+    }
+}
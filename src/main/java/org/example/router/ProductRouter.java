@@ -1,5 +1,7 @@
 package org.example.router;
 import org.example.handler.ProductHandler;
+import org.example.handler.ReservationHandler;
+import org.example.metrics.ProductMetrics;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.server.*;
@@ -8,16 +10,36 @@ import org.springframework.web.reactive.function.server.*;
 public class ProductRouter {
 
     @Bean
-    public RouterFunction<ServerResponse> route(ProductHandler handler){
+    public RouterFunction<ServerResponse> route(ProductHandler handler, ProductMetrics metrics){
         return RouterFunctions
                 .route()
                 .GET("/api/productos", handler::getAll)
                 .GET("/api/productos/bajo-stock", handler::getBajoStock)  // Mover arriba
+                .GET("/api/productos/search", handler::search)
+                .GET("/api/productos/changes", handler::changes)
+                .GET("/api/productos/stock/eventos", handler::stockEvents)
                 .GET("/api/productos/{id}", handler::getById)  // Después
+                .POST("/api/productos/batch", handler::createBatch)
+                .POST("/api/productos/lookup", handler::lookup)
                 .POST("/api/productos", handler::create)
+                .PUT("/api/productos/stock/batch", handler::updateStockBatch)
                 .PUT("/api/productos/{id}", handler::update)
                 .PUT("/api/productos/{id}/stock", handler::updateStock)
+                .PUT("/api/productos/increasestock/{id}", handler::increaseStock)
+                .PUT("/api/productos/decreasestock/{id}", handler::decreaseStock)
                 .DELETE("/api/productos/{id}", handler::delete)
+                .filter(metrics.handlerTimer())
+                .build();
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> reservationRoute(ReservationHandler handler, ProductMetrics metrics){
+        return RouterFunctions
+                .route()
+                .POST("/api/productos/{id}/reservas", handler::reservar)
+                .POST("/api/productos/reservas/{reserva}/confirmacion", handler::confirmar)
+                .DELETE("/api/productos/reservas/{reserva}", handler::liberar)
+                .filter(metrics.handlerTimer())
                 .build();
     }
 }
@@ -1,65 +1,450 @@
 package org.example.service;
 
+import org.example.cache.ProductCache;
+import org.example.cache.SingleFlight;
+import org.example.classes.CambioProducto;
+import org.example.classes.ProductSearch;
 import org.example.classes.Producto;
+import org.example.config.ReadWriteRoutingConnectionFactory;
 import org.example.events.*;
+import org.example.exception.PublicacionException;
+import org.example.exception.StockInsuficienteException;
+import org.example.notification.PendingProjections;
 import org.example.producer.ProductProducer;
 import org.example.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class ProductService {
+    private static final Logger log = LoggerFactory.getLogger(ProductService.class);
+    // Columnas de Producto: evita traer la columna busqueda (tsvector) en cada lectura
+    private static final String COLUMNAS = "id, nombre, descripcion, precio, stock, activo, fecha_creacion, version, actualizado_en";
+
     private final ProductRepository repository;
     private final DatabaseClient databaseClient;
     private final ProductProducer productProducer;
+    private final ProductCache cache;
+    private final TransactionalOperator transactionalOperator;
+    private final PendingProjections pendingProjections;
+    private final int fetchSize;
+    // Lecturas concurrentes de la misma clave comparten una consulta (los fallos de caché de un producto muy pedido)
+    private final SingleFlight<Long, Producto> porId;
+    private final SingleFlight<BajoStock, List<Producto>> bajoStock;
 
-    public ProductService(ProductRepository repository, DatabaseClient databaseClient, ProductProducer productProducer) {
+    public ProductService(ProductRepository repository, DatabaseClient databaseClient, ProductProducer productProducer,
+                          ProductCache cache, TransactionalOperator transactionalOperator,
+                          PendingProjections pendingProjections, MeterRegistry registry,
+                          @Value("${productos.stream.fetch-size:500}") int fetchSize,
+                          @Value("${productos.coalescencia.ventana:0ms}") Duration ventana) {
         this.repository = repository;
         this.databaseClient = databaseClient;
         this.productProducer = productProducer;
+        this.cache = cache;
+        this.transactionalOperator = transactionalOperator;
+        this.pendingProjections = pendingProjections;
+        this.fetchSize = fetchSize;
+        this.porId = new SingleFlight<>("id", ventana, registry);
+        this.bajoStock = new SingleFlight<>("bajo-stock", ventana, registry);
     }
 
     public Flux<Producto> findAll() {
         return repository.findAll();
     }
 
+    // Página del catálogo por keyset sobre id (usa el índice de la PK, sin OFFSET)
+    public Flux<Producto> findPage(Long after, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNAS + " FROM productos WHERE id > $1 ORDER BY id LIMIT $2")
+                .bind(0, after != null ? after : Long.MIN_VALUE)
+                .bind(1, limit)
+                .map(ProductService::mapRow)
+                .all()
+                .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+    }
+
+    // Recorre todo el catálogo en streaming: las filas se piden a Postgres en lotes de fetchSize
+    // según la demanda del suscriptor, así la memoria no depende del tamaño de la tabla
+    public Flux<Producto> streamAll(Long after) {
+        return databaseClient.sql("SELECT " + COLUMNAS + " FROM productos WHERE id > $1 ORDER BY id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .bind(0, after != null ? after : Long.MIN_VALUE)
+                .map(ProductService::mapRow)
+                .all()
+                .limitRate(fetchSize)
+                .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+    }
+
+    // Lectura a través de la caché: solo los fallos llegan a Postgres, uno por id a la vez.
+    // La generación se toma antes de consultar: si el id se invalida entretanto, la fila no se cachea
     public Mono<Producto> findById(Long id) {
-        return repository.findById(id);
+        return Mono.justOrEmpty(cache.get(id))
+                .switchIfEmpty(Mono.defer(() -> porId.execute(id, () -> Mono.defer(() -> {
+                    long generacion = cache.generacion(id);
+                    return repository.findById(id)
+                            .doOnNext(producto -> cache.putSiVigente(producto, generacion))
+                            .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+                }))));
+    }
+
+    // Varios productos en una consulta: primero la caché, el resto con un único WHERE id = ANY($1)
+    // (salvo los ids que ya se están consultando, que se comparten con findById u otro lookup).
+    // Los ids inexistentes simplemente no aparecen en el mapa
+    public Mono<Map<Long, Producto>> findByIds(Collection<Long> ids) {
+        return Mono.defer(() -> {
+            Map<Long, Producto> encontrados = new HashMap<>();
+            List<Long> pendientes = new ArrayList<>();
+            for (Long id : ids) {
+                cache.get(id).ifPresentOrElse(p -> encontrados.put(id, p), () -> pendientes.add(id));
+            }
+            if (pendientes.isEmpty()) {
+                return Mono.just(encontrados);
+            }
+            return porId.executeAll(pendientes, this::consultarIds)
+                    .map(consultados -> {
+                        encontrados.putAll(consultados);
+                        return encontrados;
+                    });
+        });
+    }
+
+    private Mono<Map<Long, Producto>> consultarIds(List<Long> ids) {
+        return Mono.defer(() -> {
+            Map<Long, Long> generaciones = new HashMap<>();
+            ids.forEach(id -> generaciones.put(id, cache.generacion(id)));
+            return databaseClient.sql("SELECT " + COLUMNAS + " FROM productos WHERE id = ANY($1)")
+                    .bind(0, ids.toArray(Long[]::new))
+                    .map(ProductService::mapRow)
+                    .all()
+                    .doOnNext(producto -> cache.putSiVigente(producto, generaciones.get(producto.getId())))
+                    .collectMap(Producto::getId)
+                    .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+        });
     }
 
-    public Flux<Producto> obtenerProductosBajoStock(Integer minimo) {
-        return databaseClient.sql("SELECT * FROM productos_bajo_stock($1)")
+    // Productos activos con stock menor que el mínimo, servidos por el índice parcial
+    // idx_productos_bajo_stock (stock) WHERE activo; paginados por keyset sobre id
+    // Las páginas iguales pedidas a la vez comparten la consulta
+    public Flux<Producto> obtenerProductosBajoStock(Integer minimo, Long after, int limit) {
+        return bajoStock.execute(new BajoStock(minimo, after, limit), () -> consultarBajoStock(minimo, after, limit).collectList())
+                .flatMapIterable(productos -> productos);
+    }
+
+    private Flux<Producto> consultarBajoStock(Integer minimo, Long after, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNAS + " FROM productos WHERE activo AND stock < $1 AND id > $2 ORDER BY id LIMIT $3")
+                .bind(0, minimo)
+                .bind(1, after != null ? after : Long.MIN_VALUE)
+                .bind(2, limit)
+                .map(ProductService::mapRow)
+                .all()
+                .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+    }
+
+    private record BajoStock(Integer minimo, Long after, int limit) {
+    }
+
+    public Flux<Producto> streamProductosBajoStock(Integer minimo, Long after) {
+        return databaseClient.sql("SELECT " + COLUMNAS + " FROM productos WHERE activo AND stock < $1 AND id > $2 ORDER BY id")
+                .filter(statement -> statement.fetchSize(fetchSize))
                 .bind(0, minimo)
-                .map(row -> {
-                    Producto p = new Producto();
-                    p.setId(row.get("id", Long.class));
-                    p.setNombre(row.get("nombre", String.class));
-                    p.setDescripcion(row.get("descripcion", String.class));
-                    p.setPrecio(row.get("precio", Double.class));
-                    p.setStock(row.get("stock", Integer.class));
-                    p.setActivo(row.get("activo", Boolean.class));
-                    p.setFechaCreacion(row.get("fecha_creacion", java.time.LocalDateTime.class));
-                    return p;
+                .bind(1, after != null ? after : Long.MIN_VALUE)
+                .map(ProductService::mapRow)
+                .all()
+                .limitRate(fetchSize)
+                .contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+    }
+
+    /**
+     * Búsqueda sobre productos activos: texto (websearch_to_tsquery en español sobre la columna
+     * busqueda, índice GIN), rango de precio, stock mínimo y orden, paginada por keyset.
+     * Cada producto va con el cursor que continúa después de él.
+     * Falla con IllegalArgumentException si el cursor no es válido o no corresponde al orden pedido.
+     */
+    public Flux<Tuple2<Producto, String>> search(ProductSearch criterio) {
+        // Sin caché ni ETag de catálogo: puede leer de la réplica
+        return Flux.defer(() -> buscar(criterio))
+                .contextWrite(ReadWriteRoutingConnectionFactory::replica);
+    }
+
+    private Flux<Tuple2<Producto, String>> buscar(ProductSearch criterio) {
+        ProductSearch.Orden orden = criterio.getOrden() != null ? criterio.getOrden() : ProductSearch.Orden.ID;
+        boolean conTexto = criterio.getTexto() != null && !criterio.getTexto().isBlank();
+        if (orden == ProductSearch.Orden.RELEVANCIA && !conTexto) {
+            throw new IllegalArgumentException("El orden por relevancia requiere texto de búsqueda");
+        }
+        List<Object> parametros = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNAS);
+        if (conTexto) {
+            parametros.add(criterio.getTexto());
+            sql.append(", ts_rank(busqueda, q) AS rango FROM productos, websearch_to_tsquery('spanish', $1) q WHERE activo AND busqueda @@ q");
+        } else {
+            sql.append(" FROM productos WHERE activo");
+        }
+        if (criterio.getPrecioMin() != null) {
+            parametros.add(BigDecimal.valueOf(criterio.getPrecioMin()));
+            sql.append(" AND precio >= $").append(parametros.size());
+        }
+        if (criterio.getPrecioMax() != null) {
+            parametros.add(BigDecimal.valueOf(criterio.getPrecioMax()));
+            sql.append(" AND precio <= $").append(parametros.size());
+        }
+        if (criterio.getStockMin() != null) {
+            parametros.add(criterio.getStockMin());
+            sql.append(" AND stock >= $").append(parametros.size());
+        }
+        if (criterio.getCursor() != null) {
+            posicion(sql, parametros, orden, criterio.getCursor());
+        }
+        sql.append(switch (orden) {
+            case ID -> " ORDER BY id";
+            case PRECIO_ASC -> " ORDER BY precio, id";
+            case PRECIO_DESC -> " ORDER BY precio DESC, id DESC";
+            case RELEVANCIA -> " ORDER BY rango DESC, id DESC";
+        });
+        parametros.add(criterio.getLimit());
+        sql.append(" LIMIT $").append(parametros.size());
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < parametros.size(); i++) {
+            spec = spec.bind(i, parametros.get(i));
+        }
+        return spec.map(row -> {
+                    Producto producto = mapRow(row);
+                    Float rango = orden == ProductSearch.Orden.RELEVANCIA ? row.get("rango", Float.class) : null;
+                    return Tuples.of(producto, cursor(orden, producto, rango));
                 })
                 .all();
     }
 
+    // Cursor: "<orden>:<clave>:<id>" en base64 url. La clave se compara con la misma
+    // expresión del ORDER BY, así la siguiente página sigue usando el índice
+    private static String cursor(ProductSearch.Orden orden, Producto producto, Float rango) {
+        String valor = switch (orden) {
+            case ID -> "i::" + producto.getId();
+            case PRECIO_ASC -> "p:" + BigDecimal.valueOf(producto.getPrecio()).toPlainString() + ":" + producto.getId();
+            case PRECIO_DESC -> "d:" + BigDecimal.valueOf(producto.getPrecio()).toPlainString() + ":" + producto.getId();
+            case RELEVANCIA -> "r:" + rango + ":" + producto.getId();
+        };
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void posicion(StringBuilder sql, List<Object> parametros, ProductSearch.Orden orden, String cursor) {
+        String[] partes;
+        try {
+            partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor no válido", e);
+        }
+        String prefijo = switch (orden) {
+            case ID -> "i";
+            case PRECIO_ASC -> "p";
+            case PRECIO_DESC -> "d";
+            case RELEVANCIA -> "r";
+        };
+        if (partes.length != 3 || !partes[0].equals(prefijo)) {
+            throw new IllegalArgumentException("El cursor no corresponde al orden pedido");
+        }
+        try {
+            parametros.add(Long.parseLong(partes[2]));
+            int id = parametros.size();
+            switch (orden) {
+                case ID -> sql.append(" AND id > $").append(id);
+                case PRECIO_ASC -> {
+                    parametros.add(new BigDecimal(partes[1]));
+                    sql.append(" AND (precio, id) > ($").append(parametros.size()).append(", $").append(id).append(")");
+                }
+                case PRECIO_DESC -> {
+                    parametros.add(new BigDecimal(partes[1]));
+                    sql.append(" AND (precio, id) < ($").append(parametros.size()).append(", $").append(id).append(")");
+                }
+                case RELEVANCIA -> {
+                    parametros.add(Float.parseFloat(partes[1]));
+                    sql.append(" AND (ts_rank(busqueda, q), id) < ($").append(parametros.size()).append("::real, $").append(id).append(")");
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido", e);
+        }
+    }
+
+    /**
+     * Feed de cambios posteriores al token (vacío o null: desde el principio), altas y modificaciones
+     * junto con las bajas de productos_eliminados, en orden (transaccion, version).
+     * Solo se leen transacciones anteriores a la más antigua todavía abierta (pg_snapshot_xmin):
+     * una transacción que confirme más tarde tiene un id mayor y aparecerá después del token,
+     * así el cliente no se salta filas aunque las versiones se confirmen fuera de orden.
+     * Con limit null recorre todo en streaming por lotes de fetchSize.
+     *
+     * @throws IllegalArgumentException si el token no es válido (antes de consultar la base)
+     */
+    public Flux<CambioProducto> changes(String token, Integer limit) {
+        long[] posicion = posicionFeed(token);
+        return Flux.defer(() -> {
+            String filtro = " WHERE (transaccion, version) > ($1::bigint::text::xid8, $2)"
+                    + " AND transaccion < pg_snapshot_xmin(pg_current_snapshot())";
+            String sql = "SELECT " + COLUMNAS + ", transaccion, transaccion::text AS txid, false AS eliminado FROM productos" + filtro
+                    + " UNION ALL SELECT id, NULL, NULL, NULL, NULL, NULL, NULL, version, eliminado_en, transaccion, transaccion::text, true"
+                    + " FROM productos_eliminados" + filtro
+                    + " ORDER BY transaccion, version" + (limit != null ? " LIMIT $3" : "");
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql)
+                    .bind(0, posicion[0])
+                    .bind(1, posicion[1]);
+            if (limit != null) {
+                spec = spec.bind(2, limit);
+            } else {
+                spec = spec.filter(statement -> statement.fetchSize(fetchSize));
+            }
+            Flux<CambioProducto> cambios = spec.map(row -> {
+                        boolean eliminado = Boolean.TRUE.equals(row.get("eliminado", Boolean.class));
+                        Long version = row.get("version", Long.class);
+                        String txid = row.get("txid", String.class);
+                        return new CambioProducto(
+                                row.get("id", Long.class),
+                                eliminado,
+                                version,
+                                row.get("actualizado_en", LocalDateTime.class),
+                                tokenFeed(txid, version),
+                                eliminado ? null : mapRow(row));
+                    })
+                    .all();
+            return limit != null ? cambios : cambios.limitRate(fetchSize);
+        }).contextWrite(ReadWriteRoutingConnectionFactory::lectura);
+    }
 
-    // Commands (escrituras asíncronas)
+    private static String tokenFeed(String txid, Long version) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((txid + ":" + version).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] posicionFeed(String token) {
+        if (token == null || token.isBlank()) {
+            return new long[]{0, 0};
+        }
+        try {
+            String[] partes = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+            if (partes.length != 2) {
+                throw new IllegalArgumentException("Token de cambios no válido");
+            }
+            return new long[]{Long.parseLong(partes[0]), Long.parseLong(partes[1])};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Token de cambios no válido", e);
+        }
+    }
+
+    static Producto mapRow(Readable row) {
+        Producto p = new Producto();
+        p.setId(row.get("id", Long.class));
+        p.setNombre(row.get("nombre", String.class));
+        p.setDescripcion(row.get("descripcion", String.class));
+        p.setPrecio(row.get("precio", Double.class));
+        p.setStock(row.get("stock", Integer.class));
+        p.setActivo(row.get("activo", Boolean.class));
+        p.setFechaCreacion(row.get("fecha_creacion", LocalDateTime.class));
+        p.setVersion(row.get("version", Long.class));
+        p.setActualizadoEn(row.get("actualizado_en", LocalDateTime.class));
+        return p;
+    }
+
+
+    // Commands (escrituras asíncronas): responden cuando Kafka confirma el evento, no esperan a la proyección.
+    // Sin id del cliente el alta lo toma de la secuencia al aplicarse, sin ida y vuelta a la base aquí
     public Mono<Producto> save(Producto producto) {
-        ProductCreatedEvent event = new ProductCreatedEvent(
-                producto.getId(),
-                producto.getNombre(),
-                producto.getDescripcion(),
-                producto.getPrecio(),
-                producto.getStock()
-        );
-        productProducer.sendProductCreatedEvent(event);
-        return Mono.just(producto); // Respuesta inmediata, no espera DB
+        return productProducer.sendProductCreatedEvent(createdEvent(producto))
+                .thenReturn(producto);
+    }
+
+    // Solo para Prefer: wait-for-projection: sin id del cliente se toma uno de la secuencia de
+    // productos, así se puede verificar la proyección y la respuesta ya lo trae
+    public Mono<Producto> asignarId(Producto producto) {
+        if (producto.getId() != null) {
+            return Mono.just(producto);
+        }
+        return repository.nextId()
+                .map(id -> {
+                    producto.setId(id);
+                    return producto;
+                });
+    }
+
+    // Variantes de Prefer: wait-for-projection. Publican igual que los comandos normales y esperan
+    // (como máximo `espera`) a que el consumidor aplique el evento; vacías si no quedó aplicado
+    public Mono<Producto> saveAndWait(Producto producto, Duration espera) {
+        return esperarProyeccion(productProducer.sendProductCreatedEvent(createdEvent(producto)), espera,
+                repository.findById(producto.getId()));
+    }
+
+    public Mono<Producto> updateAndWait(Long id, Producto updated, Duration espera) {
+        ProductUpdatedEvent event = new ProductUpdatedEvent(id, updated.getNombre(), updated.getDescripcion(),
+                updated.getPrecio(), updated.getStock());
+        return esperarProyeccion(productProducer.sendProductUpdatedEvent(event), espera,
+                repository.findById(id).filterWhen(p -> Objects.equals(p.getNombre(), updated.getNombre())
+                        && Objects.equals(p.getDescripcion(), updated.getDescripcion())
+                        && mismoPrecio(p.getPrecio(), updated.getPrecio())
+                        // Sin stock en la actualización no se toca: cualquier valor guardado vale
+                        ? updated.getStock() == null ? Mono.just(true) : mismoStock(p, updated.getStock())
+                        : Mono.just(false)));
+    }
+
+    // precio es NUMERIC(10,2): el valor enviado (p. ej. 19.99f como double) se compara redondeado a céntimos
+    static boolean mismoPrecio(Double guardado, Double enviado) {
+        if (guardado == null || enviado == null) {
+            return guardado == enviado;
+        }
+        return BigDecimal.valueOf(guardado).setScale(2, RoundingMode.HALF_UP)
+                .compareTo(BigDecimal.valueOf(enviado).setScale(2, RoundingMode.HALF_UP)) == 0;
+    }
+
+    public Mono<Producto> updateStockAndWait(Long id, Integer stock, Duration espera) {
+        return esperarProyeccion(productProducer.sendProductStockUpdatedEvent(new ProductStockUpdatedEvent(id, stock)), espera,
+                repository.findById(id).filterWhen(p -> mismoStock(p, stock)));
+    }
+
+    // La proyección guarda el stock pedido menos lo arrendado por las reservas (ProductRepository.ARRENDADO)
+    private Mono<Boolean> mismoStock(Producto producto, Integer stock) {
+        if (stock == null) {
+            return Mono.just(producto.getStock() == null);
+        }
+        return repository.stockArrendado(producto.getId())
+                .map(arrendado -> Objects.equals(producto.getStock(), Math.max(stock - arrendado, 0)));
+    }
+
+    public Mono<Boolean> deleteAndWait(Long id, Duration espera) {
+        return esperarProyeccion(productProducer.sendProductDeletedEvent(new ProductDeletedEvent(id)), espera,
+                repository.existsById(id).map(existe -> !existe))
+                .defaultIfEmpty(false);
+    }
+
+    // Tanto si el consumidor local confirma como si vence el plazo se verifica en la base: con varias
+    // réplicas el evento puede aplicarlo otra, y un comando posterior puede haberlo pisado
+    private <T> Mono<T> esperarProyeccion(Mono<Void> envio, Duration espera, Mono<T> verificacion) {
+        return pendingProjections.publishAndAwait(
+                        correlacion -> envio.contextWrite(Context.of(ProductProducer.CORRELACION_HEADER, correlacion)),
+                        espera)
+                .then(verificacion);
     }
 
     public Mono<Producto> update(Long id, Producto updated) {
@@ -70,24 +455,78 @@ public class ProductService {
                 updated.getPrecio(),
                 updated.getStock()
         );
-        productProducer.sendProductUpdatedEvent(event);
-        return Mono.just(updated);
+        return productProducer.sendProductUpdatedEvent(event)
+                .thenReturn(updated);
     }
 
     public Mono<Producto> updateStock(Long id, Integer newStock) {
-        ProductStockUpdatedEvent event = new ProductStockUpdatedEvent(id, newStock);
-        productProducer.sendProductStockUpdatedEvent(event);
-        return repository.findById(id)
-                .map(producto -> {
-                    producto.setStock(newStock);
-                    return producto;
-                });
+        return findById(id)
+                .flatMap(producto -> productProducer.sendProductStockUpdatedEvent(new ProductStockUpdatedEvent(id, newStock))
+                        .then(Mono.fromCallable(() -> {
+                            producto.setStock(newStock);
+                            return producto;
+                        })));
+    }
+
+    // Variante para el endpoint en lote: no consulta el producto, solo publica
+    public Mono<Long> publishStockUpdate(Long id, Integer stock) {
+        return productProducer.sendProductStockUpdatedEvent(new ProductStockUpdatedEvent(id, stock))
+                .thenReturn(id);
+    }
+
+    private ProductCreatedEvent createdEvent(Producto producto) {
+        return new ProductCreatedEvent(
+                producto.getId(),
+                producto.getNombre(),
+                producto.getDescripcion(),
+                producto.getPrecio(),
+                producto.getStock()
+        );
+    }
+
+    // Ajustes relativos de stock: se aplican en la base con una única sentencia condicional
+    // para no perder actualizaciones concurrentes y rechazar en el acto la falta de stock.
+    // Con outbox habilitada, el UPDATE y el evento quedan en la misma transacción; sin ella el
+    // UPDATE confirma antes de enviar a Kafka, así el bloqueo de la fila no espera al broker
+    public Mono<Producto> increaseStock(Long id, int cantidad) {
+        return ajustarStock(repository.increaseStock(id, cantidad), cantidad);
+    }
+
+    public Mono<Producto> decreaseStock(Long id, int cantidad) {
+        return ajustarStock(repository.decreaseStock(id, cantidad)
+                // Sin fila: se distingue producto inexistente de stock insuficiente
+                .switchIfEmpty(Mono.defer(() -> repository.existsById(id)
+                        .flatMap(existe -> existe
+                                ? Mono.error(new StockInsuficienteException(id, cantidad))
+                                : Mono.empty()))), -cantidad);
+    }
+
+    private Mono<Producto> ajustarStock(Mono<Producto> actualizacion, int cantidad) {
+        if (productProducer.isOutboxEnabled()) {
+            return actualizacion
+                    .flatMap(producto -> stockAjustado(producto, cantidad))
+                    .as(transactionalOperator::transactional)
+                    .doOnNext(cache::put);
+        }
+        // El ajuste ya está confirmado: si el evento (informativo) no llega a Kafka no se devuelve
+        // error, que el cliente reintentaría aplicándolo dos veces; el fallo queda en productos.kafka.send
+        return actualizacion
+                .doOnNext(cache::put)
+                .flatMap(producto -> stockAjustado(producto, cantidad)
+                        .onErrorResume(PublicacionException.class, e -> {
+                            log.warn("Ajuste de stock del producto {} aplicado sin publicar su evento", producto.getId(), e);
+                            return Mono.just(producto);
+                        }));
+    }
+
+    private Mono<Producto> stockAjustado(Producto producto, int cantidad) {
+        return productProducer.sendProductStockAdjustedEvent(
+                        new ProductStockAdjustedEvent(producto.getId(), cantidad, producto.getStock()))
+                .thenReturn(producto);
     }
 
     public Mono<Void> delete(Long id) {
-        ProductDeletedEvent event = new ProductDeletedEvent(id);
-        productProducer.sendProductDeletedEvent(event);
-        return Mono.empty();
+        return productProducer.sendProductDeletedEvent(new ProductDeletedEvent(id));
     }
 
 }
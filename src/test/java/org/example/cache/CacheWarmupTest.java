@@ -0,0 +1,44 @@
+package org.example.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Test básico para la instantánea de ids de CacheWarmup
+ * Verifica que se lee lo escrito y que un fichero ajeno se rechaza
+ */
+class CacheWarmupTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void snapshotShouldRoundTrip() throws IOException {
+        Path ruta = directorio.resolve("productos.ids");
+        CacheWarmup.escribir(ruta, List.of(3L, 1L, 99L));
+
+        assert CacheWarmup.leer(ruta).equals(List.of(3L, 1L, 99L)) : "Se conserva el orden (más usados primero)";
+        assert !Files.exists(directorio.resolve("productos.ids.tmp")) : "El temporal se renombra";
+
+        CacheWarmup.escribir(ruta, List.of());
+        assert CacheWarmup.leer(ruta).isEmpty();
+    }
+
+    @Test
+    void unknownFormatShouldBeRejected() throws IOException {
+        Path ruta = directorio.resolve("otro");
+        Files.write(ruta, new byte[]{0, 0, 0, 7, 0, 0, 0, 0});
+
+        try {
+            CacheWarmup.leer(ruta);
+            assert false : "Debe fallar con un formato desconocido";
+        } catch (IOException e) {
+            assert e.getMessage().contains("Formato");
+        }
+    }
+}
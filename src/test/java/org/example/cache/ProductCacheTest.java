@@ -0,0 +1,71 @@
+package org.example.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.classes.Producto;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Test básico para ProductCache sin Spring
+ * Verifica copias defensivas, refresco por evento y métricas
+ */
+class ProductCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProductCache cache = new ProductCache(registry, 10, Duration.ofMinutes(1));
+
+    private Producto producto(Long id, int stock) {
+        return new Producto(id, "Producto " + id, "Descripción", 10.0, stock, true, LocalDateTime.now(), null, null);
+    }
+
+    @Test
+    void getShouldReturnCopyOfCachedProduct() {
+        cache.put(producto(1L, 5));
+
+        Producto leido = cache.get(1L).orElseThrow();
+        leido.setStock(0);
+
+        assert cache.get(1L).orElseThrow().getStock() == 5 : "La entrada cacheada no debe cambiar al mutar la copia";
+    }
+
+    @Test
+    void refreshShouldOnlyTouchExistingEntries() {
+        cache.put(producto(1L, 5));
+
+        cache.refresh(1L, p -> p.setStock(7));
+        cache.refresh(2L, p -> p.setStock(7));
+
+        assert cache.get(1L).orElseThrow().getStock() == 7;
+        assert cache.get(2L).isEmpty() : "refresh no debe crear entradas nuevas";
+    }
+
+    @Test
+    void invalidateShouldRemoveEntry() {
+        cache.put(producto(1L, 5));
+        cache.invalidate(1L);
+
+        assert cache.get(1L).isEmpty();
+    }
+
+    @Test
+    void readStartedBeforeInvalidationShouldNotBeCached() {
+        long generacion = cache.generacion(1L);
+        cache.invalidate(1L);
+
+        cache.putSiVigente(producto(1L, 5), generacion);
+        assert cache.get(1L).isEmpty() : "La fila leída antes de la invalidación puede ser anterior";
+
+        cache.putSiVigente(producto(1L, 6), cache.generacion(1L));
+        assert cache.get(1L).orElseThrow().getStock() == 6;
+    }
+
+    @Test
+    void metricsShouldBeRegistered() {
+        cache.get(99L);
+
+        assert registry.find("cache.gets").tag("cache", "productos").tag("result", "miss").functionCounter() != null
+                : "Los fallos de caché deben publicarse en Micrometer";
+    }
+}
@@ -0,0 +1,81 @@
+package org.example.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test básico para SingleFlight
+ * Verifica que las consultas simultáneas de una clave se agrupan y que al terminar se vuelve a consultar
+ */
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", Duration.ZERO, registry);
+
+    @Test
+    void concurrentCallsShouldShareOneQuery() {
+        AtomicInteger consultas = new AtomicInteger();
+        Sinks.One<String> resultado = Sinks.one();
+
+        Mono<String> primera = singleFlight.execute(1L, () -> {
+            consultas.incrementAndGet();
+            return resultado.asMono();
+        });
+        Mono<String> segunda = singleFlight.execute(1L, () -> {
+            consultas.incrementAndGet();
+            return Mono.just("otra");
+        });
+        List<String> recibidos = new ArrayList<>();
+        primera.subscribe(recibidos::add);
+        segunda.subscribe(recibidos::add);
+        resultado.tryEmitValue("uno");
+
+        assert consultas.get() == 1 : "La segunda se une a la consulta en curso";
+        assert recibidos.equals(List.of("uno", "uno"));
+        assert registry.get("productos.singleflight.deduplicacion").gauge().value() == 0.5;
+
+        // Terminada, la siguiente vuelve a consultar
+        StepVerifier.create(singleFlight.execute(1L, () -> Mono.just("nueva")))
+                .expectNext("nueva")
+                .verifyComplete();
+    }
+
+    @Test
+    void batchShouldJoinInFlightKeysAndQueryTheRest() {
+        Sinks.One<String> enCurso = Sinks.one();
+        Mono<String> individual = singleFlight.execute(1L, enCurso::asMono);
+        individual.subscribe();
+        List<List<Long>> lotes = new ArrayList<>();
+
+        Mono<Map<Long, String>> lote = singleFlight.executeAll(List.of(1L, 2L, 3L), ids -> {
+            lotes.add(ids);
+            return Mono.just(Map.of(2L, "dos"));
+        });
+        List<Map<Long, String>> recibidos = new ArrayList<>();
+        lote.subscribe(recibidos::add);
+        enCurso.tryEmitValue("uno");
+
+        assert recibidos.equals(List.of(Map.of(1L, "uno", 2L, "dos"))) : "El 3 no existe: " + recibidos;
+        assert lotes.equals(List.of(List.of(2L, 3L))) : "Solo se consultan los ids que no estaban en curso: " + lotes;
+    }
+
+    @Test
+    void errorsShouldNotOutliveTheFlight() {
+        StepVerifier.create(singleFlight.execute(1L, () -> Mono.error(new IllegalStateException("caída"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        StepVerifier.create(singleFlight.execute(1L, () -> Mono.just("recuperado")))
+                .expectNext("recuperado")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.config;
+
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.integration.BlockHoundIntegration;
+
+/**
+ * Excepciones de BlockHound para los tests: llamadas que bloquean de forma breve y acotada
+ * y que se aceptan en el event loop. Se registra en META-INF/services.
+ */
+public class BlockHoundAllowances implements BlockHoundIntegration {
+
+    @Override
+    public void applyTo(BlockHound.Builder builder) {
+        // SecureRandom lee la semilla una vez (correlaciones de PendingProjections)
+        builder.allowBlockingCallsInside("java.util.UUID", "randomUUID");
+        // Escritura de logs en consola
+        builder.allowBlockingCallsInside("ch.qos.logback.core.OutputStreamAppender", "writeBytes");
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.config;
+
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test básico para el error handler del modo lote de KafkaConfig
+ * Verifica que el registro que falla sale del lote sin reintentos en el sitio: al tópico de reintento
+ * o, si es un error de integridad, directo a la DLT
+ */
+class KafkaConfigTest {
+
+    private static final TopicPartition PARTICION = new TopicPartition("product-events", 0);
+
+    @Test
+    void integrityErrorsShouldGoStraightToTheDlt() {
+        List<ProducerRecord<Object, Object>> enviados = fallarLote(new R2dbcDataIntegrityViolationException("stock >= 0"));
+
+        assert enviados.size() == 1 : "Un único envío, sin reintentos: " + enviados.size();
+        assert enviados.get(0).topic().equals("product-events-dlt");
+        assert "2".equals(enviados.get(0).key());
+    }
+
+    @Test
+    void otherErrorsShouldGoToTheRetryTopic() {
+        List<ProducerRecord<Object, Object>> enviados = fallarLote(new IllegalStateException("conexión cerrada"));
+
+        assert enviados.size() == 1 : "Un único envío, sin reintentos: " + enviados.size();
+        assert enviados.get(0).topic().equals("product-events-reintento-lote");
+        assert "2".equals(enviados.get(0).key());
+    }
+
+    // Falla el segundo registro de un lote de dos y devuelve lo publicado por el recoverer
+    private static List<ProducerRecord<Object, Object>> fallarLote(Exception causa) {
+        List<ProducerRecord<Object, Object>> enviados = new ArrayList<>();
+        DefaultErrorHandler errorHandler = KafkaConfig.batchErrorHandler(plantilla(enviados));
+        ConsumerRecord<Object, Object> primero = new ConsumerRecord<>("product-events", 0, 10L, "1", "a");
+        ConsumerRecord<Object, Object> fallido = new ConsumerRecord<>("product-events", 0, 11L, "2", "b");
+        ConsumerRecords<Object, Object> lote = new ConsumerRecords<>(Map.of(PARTICION, List.of(primero, fallido)));
+        Exception error = new ListenerExecutionFailedException("lote",
+                new BatchListenerFailedException("Evento sin aplicar", causa, fallido));
+
+        errorHandler.handleBatch(error, lote, consumidor(), contenedor(), () -> { });
+        return enviados;
+    }
+
+    private static KafkaTemplate<Object, Object> plantilla(List<ProducerRecord<Object, Object>> enviados) {
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(Map.of())) {
+            @Override
+            public CompletableFuture<SendResult<Object, Object>> send(ProducerRecord<Object, Object> record) {
+                enviados.add(record);
+                RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0);
+                return CompletableFuture.completedFuture(new SendResult<>(record, metadata));
+            }
+        };
+    }
+
+    private static MockConsumer<Object, Object> consumidor() {
+        MockConsumer<Object, Object> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(List.of(PARTICION));
+        consumer.updateBeginningOffsets(Map.of(PARTICION, 0L));
+        return consumer;
+    }
+
+    private static KafkaMessageListenerContainer<Object, Object> contenedor() {
+        return new KafkaMessageListenerContainer<>(new DefaultKafkaConsumerFactory<>(Map.of()),
+                new ContainerProperties("product-events"));
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.config;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+/**
+ * Test básico para el enrutado de conexiones por contexto de Reactor
+ * Verifica que sin indicación se usa escritura y que lectura y réplica se respetan
+ */
+class ReadWriteRoutingConnectionFactoryTest {
+
+    private final ReadWriteRoutingConnectionFactory routing = new ReadWriteRoutingConnectionFactory();
+
+    @Test
+    void shouldDefaultToWritePool() {
+        StepVerifier.create(routing.determineCurrentLookupKey())
+                .expectNext(ReadWriteRoutingConnectionFactory.ESCRITURA)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRouteByContext() {
+        StepVerifier.create(routing.determineCurrentLookupKey().contextWrite(ReadWriteRoutingConnectionFactory::lectura))
+                .expectNext(ReadWriteRoutingConnectionFactory.LECTURA)
+                .verifyComplete();
+        StepVerifier.create(routing.determineCurrentLookupKey().contextWrite(ReadWriteRoutingConnectionFactory::replica))
+                .expectNext(ReadWriteRoutingConnectionFactory.REPLICA)
+                .verifyComplete();
+    }
+}
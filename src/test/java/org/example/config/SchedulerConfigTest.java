@@ -0,0 +1,79 @@
+package org.example.config;
+
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Test básico para los schedulers de SchedulerConfig, con BlockHound instalado
+ * Verifica que el trabajo bloqueante sale de los hilos no bloqueantes y que la cola está acotada
+ */
+class SchedulerConfigTest {
+
+    private final SchedulerConfig config = new SchedulerConfig();
+
+    @Test
+    void blockingOnParallelShouldBeDetected() {
+        StepVerifier.create(bloqueante().subscribeOn(Schedulers.parallel()))
+                .expectError(BlockingOperationError.class)
+                .verify();
+    }
+
+    @Test
+    void producerSchedulerShouldRunBlockingWork() {
+        for (String modelo : new String[]{"plataforma", "virtual"}) {
+            Scheduler scheduler = config.kafkaProducerScheduler(2, 10, modelo);
+            try {
+                StepVerifier.create(Mono.just(1)
+                                .publishOn(Schedulers.parallel())
+                                .flatMap(valor -> bloqueante().subscribeOn(scheduler)))
+                        .expectNext(1)
+                        .verifyComplete();
+            } finally {
+                scheduler.dispose();
+            }
+        }
+    }
+
+    @Test
+    void producerSchedulerShouldRejectWhenQueueIsFull() {
+        Scheduler scheduler = config.kafkaProducerScheduler(1, 1, "plataforma");
+        CountDownLatch liberar = new CountDownLatch(1);
+        try {
+            // Un hilo y una tarea en cola: de tres tareas que no terminan, al menos una se rechaza
+            int rechazadas = 0;
+            for (int i = 0; i < 3; i++) {
+                try {
+                    scheduler.schedule(() -> esperar(liberar));
+                } catch (RejectedExecutionException e) {
+                    rechazadas++;
+                }
+            }
+            assert rechazadas > 0 : "Con la cola llena la tarea debe rechazarse";
+        } finally {
+            liberar.countDown();
+            scheduler.dispose();
+        }
+    }
+
+    private static Mono<Integer> bloqueante() {
+        return Mono.fromCallable(() -> {
+            Thread.sleep(1);
+            return 1;
+        });
+    }
+
+    private static void esperar(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
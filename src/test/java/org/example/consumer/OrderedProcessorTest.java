@@ -0,0 +1,59 @@
+package org.example.consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test básico para OrderedProcessor
+ * Verifica el orden por clave, el paralelismo entre claves y la propagación de errores
+ */
+class OrderedProcessorTest {
+
+    private final OrderedProcessor processor = new OrderedProcessor(4, 16);
+
+    @AfterEach
+    void tearDown() {
+        processor.stop();
+    }
+
+    @Test
+    void tasksWithSameKeyShouldRunInSubmissionOrder() {
+        List<Integer> orden = new CopyOnWriteArrayList<>();
+        // La primera tarea tarda más: si se solaparan, la segunda terminaría antes
+        Mono<Void> primera = processor.submit(1L, () -> Mono.delay(Duration.ofMillis(50)).doOnNext(v -> orden.add(1)).then());
+        Mono<Void> segunda = processor.submit(1L, () -> Mono.fromRunnable(() -> orden.add(2)));
+
+        StepVerifier.create(Flux.merge(primera, segunda)).verifyComplete();
+        assert orden.equals(List.of(1, 2)) : "Orden inesperado: " + orden;
+    }
+
+    @Test
+    void tasksWithDifferentLanesShouldRunInParallel() {
+        // Claves 0 y 1 caen en carriles distintos
+        Mono<Long> lenta = processor.submit(0L, () -> Mono.delay(Duration.ofMillis(200)));
+        Mono<Long> rapida = processor.submit(1L, () -> Mono.just(7L));
+
+        StepVerifier.create(Flux.merge(lenta, rapida))
+                .expectNext(7L)
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void errorShouldReachCallerAndNotStopLane() {
+        StepVerifier.create(processor.submit(1L, () -> Mono.error(new IllegalStateException("fallo"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        StepVerifier.create(processor.submit(1L, () -> Mono.just("ok")))
+                .expectNext("ok")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.ProductUpdatedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Test básico para la fusión de eventos de ProductBatch
+ * Verifica que cada id termina en un único estado
+ */
+class ProductBatchTest {
+
+    @Test
+    void lastUpdateShouldWin() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductUpdatedEvent(1L, "A", "d", 1.0, 1),
+                new ProductUpdatedEvent(1L, "B", "d", 2.0, 2)));
+
+        assert batch.getUpdates().size() == 1;
+        assert batch.getUpdates().get(1L).getNombre().equals("B");
+        assert batch.getUpdates().get(1L).getStock() == 2;
+    }
+
+    @Test
+    void deleteShouldDropPreviousEvents() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductCreatedEvent(1L, "A", "d", 1.0, 1),
+                new ProductStockUpdatedEvent(1L, 5),
+                new ProductDeletedEvent(1L),
+                new ProductUpdatedEvent(1L, "B", "d", 2.0, 2)));
+
+        assert batch.getUpserts().isEmpty();
+        assert batch.getStocks().isEmpty();
+        assert batch.getUpdates().isEmpty() : "Una actualización posterior al borrado no debe aplicarse";
+        assert batch.getDeletes().contains(1L);
+        assert batch.size() == 1;
+    }
+
+    @Test
+    void stockShouldMergeIntoCreate() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductCreatedEvent(1L, "A", "d", 1.0, 1),
+                new ProductStockUpdatedEvent(1L, 9)));
+
+        assert batch.getUpserts().get(1L).getStock() == 9;
+        assert batch.getStocks().isEmpty();
+    }
+
+    @Test
+    void updateWithoutStockShouldKeepIt() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductCreatedEvent(1L, "A", "d", 1.0, 7),
+                new ProductUpdatedEvent(1L, "B", "d", 2.0, null),
+                new ProductStockUpdatedEvent(2L, 5),
+                new ProductUpdatedEvent(2L, "C", "d", 2.0, null),
+                new ProductUpdatedEvent(3L, "D", "d", 2.0, null)));
+
+        assert batch.getUpserts().get(1L).getStock() == 7;
+        assert batch.getUpdates().get(2L).getStock() == 5 : "El cambio de stock anterior se conserva";
+        assert batch.getUpdates().get(3L).getStock() == null : "Sin stock el UPDATE conserva el guardado";
+        assert batch.getStocks().isEmpty();
+    }
+
+    @Test
+    void createWithoutIdShouldBeInserted() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductCreatedEvent(null, "A", "d", 1.0, 1),
+                new ProductCreatedEvent(null, "B", "d", 1.0, 1)));
+
+        assert batch.getInserts().size() == 2;
+        assert batch.ids().isEmpty();
+    }
+
+    @Test
+    void createAfterDeleteShouldRecreate() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductDeletedEvent(1L),
+                new ProductCreatedEvent(1L, "A", "d", 1.0, 1)));
+
+        assert batch.getDeletes().isEmpty();
+        assert batch.getUpserts().containsKey(1L);
+    }
+
+    @Test
+    void stockAdjustedShouldApplyResultingStock() {
+        ProductBatch batch = ProductBatch.coalesce(List.of(
+                new ProductUpdatedEvent(1L, "A", "d", 1.0, 10),
+                new ProductStockAdjustedEvent(1L, -3, 7),
+                new ProductStockAdjustedEvent(2L, 5, 15)));
+
+        assert batch.getUpdates().get(1L).getStock() == 7;
+        assert batch.getStocks().get(2L) == 15;
+    }
+
+    @Test
+    void recordsShouldKeepThePositionOfTheLastEventOfEachId() {
+        ConsumerRecord<String, Object> reintento = new ConsumerRecord<>("product-events-reintento-lote", 0, 3L, "2",
+                new ProductStockUpdatedEvent(2L, 4));
+        reintento.headers().add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(1).array());
+        reintento.headers().add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(8L).array());
+
+        ProductBatch batch = ProductBatch.coalesceRegistros(List.of(
+                new ConsumerRecord<>("product-events", 0, 10L, "1", new ProductCreatedEvent(1L, "A", "d", 1.0, 1)),
+                new ConsumerRecord<>("product-events", 0, 11L, "1", new ProductUpdatedEvent(1L, "B", "d", 2.0, 2)),
+                reintento));
+
+        assert batch.getPosiciones().get(1L).equals(new PosicionEvento(0, 11L));
+        assert batch.getPosiciones().get(2L).equals(new PosicionEvento(1, 8L)) : "El reintento conserva la posición original";
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
+import org.example.classes.Producto;
+import org.example.notification.PendingProjections;
+import org.example.notification.StockNotifier;
+import org.example.producer.ProductProducer;
+import org.example.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test básico para la publicación de stock de ProductCacheSyncListener
+ * Verifica que se publica el stock guardado por la proyección y no el pedido en el evento, y que una espera
+ * de esta réplica se completa cuando otra aplica el evento
+ */
+class ProductCacheSyncListenerTest {
+
+    private final PendingProjections pendientes = new PendingProjections();
+    private final StockNotifier notifier = new StockNotifier(16, BufferOverflowStrategy.DROP_OLDEST, 100);
+    private final ConsumerRecord<String, Object> record = new ConsumerRecord<>("product-events", 2, 40L, "1", null);
+
+    @Test
+    void shouldPublishTheStoredStockOnceTheProjectionAppliesTheEvent() {
+        AtomicInteger consultas = new AtomicInteger();
+        // La proyección aplica el evento en la tercera consulta; 3 unidades están arrendadas
+        ProductCacheSyncListener listener = listener(Duration.ofSeconds(2), (particion, offset) ->
+                consultas.incrementAndGet() < 3 ? Mono.empty() : Mono.just(producto(7)));
+
+        StepVerifier.create(notifier.subscribe().take(1))
+                .then(() -> listener.publicarGuardado(1L, record).subscribe())
+                .expectNextMatches(cambio -> cambio.getId() == 1L && cambio.getStock() == 7)
+                .verifyComplete();
+        assert consultas.get() == 3;
+    }
+
+    @Test
+    void shouldQueryTheRecordPosition() {
+        ProductCacheSyncListener listener = listener(Duration.ofSeconds(1), (particion, offset) ->
+                particion == 2 && offset == 40L ? Mono.just(producto(5)) : Mono.error(new AssertionError("Posición")));
+
+        StepVerifier.create(listener.publicarGuardado(1L, record)).verifyComplete();
+    }
+
+    @Test
+    void shouldPublishNothingIfTheProjectionNeverAppliesIt() {
+        AtomicInteger publicados = new AtomicInteger();
+        notifier.subscribe().subscribe(cambio -> publicados.incrementAndGet());
+        ProductCacheSyncListener listener = listener(Duration.ofMillis(300), (particion, offset) -> Mono.empty());
+
+        StepVerifier.create(listener.publicarGuardado(1L, record)).verifyComplete();
+        assert publicados.get() == 0;
+    }
+
+    @Test
+    void waitShouldCompleteWhenAnotherReplicaAppliesTheEvent() {
+        AtomicInteger consultas = new AtomicInteger();
+        ProductCacheSyncListener listener = listener(Duration.ofSeconds(1), (particion, offset) -> Mono.empty(),
+                (particion, offset) -> Mono.just(consultas.incrementAndGet() >= 3));
+
+        // El consumidor local nunca la completa: solo la consulta a la base
+        StepVerifier.create(pendientes.publishAndAwait(correlacion -> Mono.fromRunnable(() -> {
+                    ConsumerRecord<String, Object> ajeno = new ConsumerRecord<>("product-events", 2, 40L, "1", null);
+                    ajeno.headers().add(ProductProducer.CORRELACION_HEADER, correlacion.getBytes(StandardCharsets.UTF_8));
+                    listener.completarPendiente(1L, ajeno).subscribe();
+                }), Duration.ofSeconds(5)))
+                .expectNext(true)
+                .verifyComplete();
+        assert consultas.get() == 3;
+    }
+
+    @Test
+    void foreignCorrelationsShouldNotQueryTheDatabase() {
+        ProductCacheSyncListener listener = listener(Duration.ofSeconds(1), (particion, offset) -> Mono.empty(),
+                (particion, offset) -> Mono.error(new AssertionError("No espera en esta réplica")));
+        record.headers().add(ProductProducer.CORRELACION_HEADER, "de-otra-replica".getBytes(StandardCharsets.UTF_8));
+
+        StepVerifier.create(listener.completarPendiente(1L, record)).verifyComplete();
+    }
+
+    private interface Aplicado {
+        Mono<Producto> buscar(int particion, long offset);
+    }
+
+    private interface Proyectado {
+        Mono<Boolean> buscar(int particion, long offset);
+    }
+
+    private ProductCacheSyncListener listener(Duration espera, Aplicado aplicado) {
+        return listener(espera, aplicado, (particion, offset) -> Mono.just(false));
+    }
+
+    private ProductCacheSyncListener listener(Duration espera, Aplicado aplicado, Proyectado proyectado) {
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "aplicado" -> aplicado.buscar((Integer) args[1], (Long) args[2]);
+                    case "proyectado" -> proyectado.buscar((Integer) args[1], (Long) args[2]);
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return new ProductCacheSyncListener(repository, new ProductCache(new SimpleMeterRegistry(), 10, Duration.ofMinutes(1)),
+                notifier, new CatalogVersion(null, Duration.ofSeconds(1)), pendientes, Duration.ZERO, espera);
+    }
+
+    private static Producto producto(int stock) {
+        Producto producto = new Producto();
+        producto.setId(1L);
+        producto.setStock(stock);
+        return producto;
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.example.cache.CatalogVersion;
+import org.example.cache.ProductCache;
+import org.example.events.ProductUpdatedEvent;
+import org.example.exception.ProductoPendienteException;
+import org.example.metrics.ProductMetrics;
+import org.example.notification.PendingProjections;
+import org.example.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * Test básico para la posición de los eventos en ProductConsumer
+ * Verifica que los reintentos conservan la posición original en product-events y que una
+ * actualización sin fila solo se descarta si el producto ya existió
+ */
+class ProductConsumerTest {
+
+    @Test
+    void recordFromTheMainTopicShouldUseItsOwnPosition() {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("product-events", 3, 42L, "1", null);
+
+        assert PosicionEvento.de(record).equals(new PosicionEvento(3, 42L));
+    }
+
+    @Test
+    void retriedRecordShouldUseTheFirstOriginalPosition() {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("product-events-reintento-1", 0, 7L, "1", null);
+        record.headers().add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(3).array());
+        record.headers().add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(42L).array());
+        // Segundo fallo, ya desde el tópico de reintento
+        record.headers().add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(0).array());
+        record.headers().add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(7L).array());
+
+        assert PosicionEvento.de(record).equals(new PosicionEvento(3, 42L));
+    }
+
+    @Test
+    void updateOfAnUnknownProductShouldBeRetried() {
+        ProductConsumer consumer = consumer(false);
+
+        StepVerifier.create(consumer.consumeProductUpdatedEvent(new ProductUpdatedEvent(1L, "A", "d", 1.0, null),
+                        new ConsumerRecord<>("product-events", 0, 5L, "1", null), "product-events", null, null))
+                .expectError(ProductoPendienteException.class)
+                .verify();
+    }
+
+    @Test
+    void staleUpdateOfAKnownProductShouldBeSkipped() {
+        ProductConsumer consumer = consumer(true);
+
+        StepVerifier.create(consumer.consumeProductUpdatedEvent(new ProductUpdatedEvent(1L, "A", "d", 1.0, null),
+                        new ConsumerRecord<>("product-events", 0, 5L, "1", null), "product-events", null, null))
+                .verifyComplete();
+    }
+
+    // Repositorio en el que ninguna escritura encuentra fila
+    private static ProductConsumer consumer(boolean conocido) {
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "conocido" -> Mono.just(conocido);
+                    case "update", "updateStock", "upsert" -> Mono.empty();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new ProductConsumer(repository, new ProductCache(registry, 10, Duration.ofMinutes(1)),
+                new ProductMetrics(registry), new OrderedProcessor(4, 16), new PendingProjections(),
+                new CatalogVersion(null, Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.events.serde;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.example.events.ProductCreatedEvent;
+import org.example.events.ProductDeletedEvent;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.events.ProductStockUpdatedEvent;
+import org.example.events.ProductUpdatedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test básico para ProductEventSerializer y ProductEventDeserializer
+ * Verifica la ida y vuelta de cada evento, los campos nulos y la lectura de JSON
+ */
+class ProductEventSerdeTest {
+
+    private final ProductEventSerializer serializer = new ProductEventSerializer();
+    private final ProductEventDeserializer deserializer = new ProductEventDeserializer();
+
+    ProductEventSerdeTest() {
+        serializer.configure(Map.of(), false);
+        deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "org.example.events"), false);
+    }
+
+    @Test
+    void allEventsShouldRoundTrip() {
+        List<Object> eventos = List.of(
+                new ProductCreatedEvent(1L, "Teclado ñandú", "Mecánico", 49.9, 10),
+                new ProductUpdatedEvent(Long.MAX_VALUE, "Mouse", "", 0.1, 0),
+                new ProductDeletedEvent(3L),
+                new ProductStockUpdatedEvent(4L, Integer.MAX_VALUE),
+                new ProductStockAdjustedEvent(5L, -3, 7));
+
+        for (Object evento : eventos) {
+            byte[] data = serializer.serialize("topic", new RecordHeaders(), evento);
+            assert data[0] == ProductEventFormat.MAGIC;
+            Object leido = deserializer.deserialize("topic", new RecordHeaders(), data);
+            assert evento.equals(leido) : "Esperado " + evento + " pero fue " + leido;
+        }
+    }
+
+    @Test
+    void nullFieldsShouldRoundTrip() {
+        ProductCreatedEvent evento = new ProductCreatedEvent(1L, null, null, null, null);
+        byte[] data = serializer.serialize("topic", evento);
+
+        assert data.length == 5 : "Cabecera de 4 bytes y un byte de id";
+        assert evento.equals(deserializer.deserialize("topic", data));
+    }
+
+    @Test
+    void binaryShouldBeSmallerThanJson() {
+        ProductCreatedEvent evento = new ProductCreatedEvent(12345L, "Teclado", "Mecánico", 49.9, 10);
+        JsonSerializer<Object> json = new JsonSerializer<>();
+
+        assert serializer.serialize("topic", evento).length < json.serialize("topic", evento).length;
+    }
+
+    @Test
+    void jsonShouldStillBeReadable() {
+        JsonSerializer<Object> json = new JsonSerializer<>();
+        RecordHeaders headers = new RecordHeaders();
+        ProductStockUpdatedEvent evento = new ProductStockUpdatedEvent(9L, 3);
+
+        byte[] data = json.serialize("topic", headers, evento);
+
+        assert evento.equals(deserializer.deserialize("topic", headers, data));
+    }
+}
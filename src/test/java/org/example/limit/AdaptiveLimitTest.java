@@ -0,0 +1,80 @@
+package org.example.limit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test básico para el límite adaptativo por gradiente de latencia
+ * Verifica el rechazo por encima del límite y que crece o baja según la latencia
+ */
+class AdaptiveLimitTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void shouldRejectAboveLimit() {
+        AdaptiveLimit limite = new AdaptiveLimit(2, 1, 10);
+
+        assert limite.tryAcquire();
+        assert limite.tryAcquire();
+        assert !limite.tryAcquire() : "El tercero supera el límite";
+
+        limite.onIgnored();
+        assert limite.tryAcquire();
+        assert limite.getEnVuelo() == 2;
+    }
+
+    @Test
+    void shouldGrowWithStableLatencyUnderLoad() {
+        AdaptiveLimit limite = new AdaptiveLimit(20, 10, 1000);
+        saturar(limite, 200, 10 * MS);
+
+        assert limite.getLimite() > 20 : "Con latencia estable y carga el límite crece: " + limite.getLimite();
+    }
+
+    @Test
+    void shouldShrinkWhenLatencyGrows() {
+        AdaptiveLimit limite = new AdaptiveLimit(100, 10, 1000);
+        saturar(limite, 200, 10 * MS);
+        int antes = limite.getLimite();
+
+        saturar(limite, 50, 100 * MS);
+
+        assert limite.getLimite() < antes : "Con la latencia disparada el límite baja: " + antes + " -> " + limite.getLimite();
+    }
+
+    @Test
+    void shouldNotGrowWithoutLoad() {
+        AdaptiveLimit limite = new AdaptiveLimit(100, 10, 1000);
+        for (int i = 0; i < 200; i++) {
+            assert limite.tryAcquire();
+            limite.onSuccess(10 * MS);
+        }
+
+        assert limite.getLimite() == 100;
+    }
+
+    @Test
+    void droppedShouldDecreaseDownToMinimum() {
+        AdaptiveLimit limite = new AdaptiveLimit(20, 10, 100);
+        for (int i = 0; i < 50; i++) {
+            assert limite.tryAcquire();
+            limite.onDropped();
+        }
+
+        assert limite.getLimite() == 10;
+        assert limite.getEnVuelo() == 0;
+    }
+
+    // Mantiene el límite lleno: cada muestra libera un permiso y vuelve a ocuparlo
+    private static void saturar(AdaptiveLimit limite, int muestras, long rtt) {
+        while (limite.tryAcquire()) {
+            // ocupa todos los permisos disponibles
+        }
+        for (int i = 0; i < muestras; i++) {
+            limite.onSuccess(rtt);
+            while (limite.tryAcquire()) {
+                // vuelve a llenar hasta el límite actual
+            }
+        }
+    }
+}
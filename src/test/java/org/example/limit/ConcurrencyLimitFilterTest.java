@@ -0,0 +1,45 @@
+package org.example.limit;
+
+import org.example.exception.PublicacionException;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Test básico para ConcurrencyLimitFilter
+ * Verifica qué errores cuentan como saturación para el límite y qué respuestas quedan fuera de la muestra
+ */
+class ConcurrencyLimitFilterTest {
+
+    @Test
+    void onlyOverloadErrorsShouldCountAsDrops() {
+        assert ConcurrencyLimitFilter.saturacion(new TimeoutException());
+        assert ConcurrencyLimitFilter.saturacion(new PublicacionException("product-events", new RuntimeException("caído")));
+        assert ConcurrencyLimitFilter.saturacion(new QueryTimeoutException("envuelto", new TimeoutException()))
+                : "La causa se busca en toda la cadena";
+
+        assert !ConcurrencyLimitFilter.saturacion(new IllegalArgumentException("cursor no válido"));
+        assert !ConcurrencyLimitFilter.saturacion(new DataIntegrityViolationException("stock negativo"));
+    }
+
+    @Test
+    void streamingShouldMatchCompatibleAcceptTypes() {
+        assert ConcurrencyLimitFilter.streaming(accept("application/x-ndjson"));
+        assert ConcurrencyLimitFilter.streaming(accept("application/json, application/x-ndjson;charset=UTF-8"))
+                : "Con parámetros también es NDJSON";
+        assert ConcurrencyLimitFilter.streaming(accept("text/event-stream"));
+
+        assert !ConcurrencyLimitFilter.streaming(accept("application/json"));
+        assert !ConcurrencyLimitFilter.streaming(accept("*/*")) : "Un comodín no pide streaming";
+        assert !ConcurrencyLimitFilter.streaming(new HttpHeaders());
+    }
+
+    private static HttpHeaders accept(String valor) {
+        HttpHeaders cabeceras = new HttpHeaders();
+        cabeceras.set(HttpHeaders.ACCEPT, valor);
+        return cabeceras;
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Test básico para ProductMetrics con un registro en memoria
+ */
+class ProductMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProductMetrics metrics = new ProductMetrics(registry);
+
+    @Test
+    void sendShouldBeTaggedByTopicAndResult() {
+        StepVerifier.create(metrics.timeSend("product-created", Mono.just(1))).expectNext(1).verifyComplete();
+        StepVerifier.create(metrics.timeSend("product-created", Mono.error(new IllegalStateException())))
+                .verifyError(IllegalStateException.class);
+
+        assert registry.get("productos.kafka.send").tag("topic", "product-created").tag("result", "success").timer().count() == 1;
+        assert registry.get("productos.kafka.send").tag("topic", "product-created").tag("result", "failure").timer().count() == 1;
+    }
+
+    @Test
+    void visibilityLagShouldUseCommandTimestamp() {
+        byte[] comandoTs = Long.toString(System.currentTimeMillis() - 250).getBytes(StandardCharsets.UTF_8);
+
+        metrics.recordVisibilityLag("product-updated", comandoTs);
+        metrics.recordVisibilityLag("product-updated", null);
+        metrics.recordVisibilityLag("product-updated", "no-es-numero".getBytes(StandardCharsets.UTF_8));
+
+        var lag = registry.get("productos.proyeccion.lag").tag("topic", "product-updated").timer();
+        assert lag.count() == 1 : "Solo las cabeceras válidas deben registrarse";
+        assert lag.totalTime(java.util.concurrent.TimeUnit.MILLISECONDS) >= 250;
+    }
+
+    @Test
+    void batchSizesShouldBeRecorded() {
+        metrics.recordBatch(500, 120);
+
+        assert registry.get("productos.consumer.lote.registros").summary().totalAmount() == 500;
+        assert registry.get("productos.consumer.lote.filas").summary().totalAmount() == 120;
+    }
+
+    @Test
+    void consumerErrorsShouldBeTaggedByTopicAndException() {
+        metrics.recordConsumerError("product-updated-reintento-0", new IllegalStateException());
+        metrics.recordDeadLetter("product-updated", "DataIntegrityViolationException");
+
+        assert registry.get("productos.consumer.errores").tag("topic", "product-updated-reintento-0")
+                .tag("excepcion", "IllegalStateException").counter().count() == 1;
+        assert registry.get("productos.consumer.dlt").tag("topic", "product-updated").counter().count() == 1;
+    }
+}
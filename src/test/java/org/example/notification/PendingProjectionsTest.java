@@ -0,0 +1,53 @@
+package org.example.notification;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test básico para PendingProjections
+ * Verifica la confirmación por correlación, el vencimiento del plazo y la limpieza del registro
+ */
+class PendingProjectionsTest {
+
+    private final PendingProjections pendientes = new PendingProjections();
+
+    @Test
+    void completionShouldReleaseWaiter() {
+        AtomicReference<String> correlacion = new AtomicReference<>();
+
+        Mono<Boolean> espera = pendientes.publishAndAwait(c -> Mono.fromRunnable(() -> correlacion.set(c)), Duration.ofSeconds(5));
+
+        StepVerifier.create(espera)
+                .then(() -> pendientes.complete(correlacion.get().getBytes(StandardCharsets.UTF_8)))
+                .expectNext(true)
+                .verifyComplete();
+        assert pendientes.size() == 0;
+    }
+
+    @Test
+    void timeoutShouldReturnFalseAndCleanUp() {
+        StepVerifier.create(pendientes.publishAndAwait(c -> Mono.empty(), Duration.ofMillis(50)))
+                .expectNext(false)
+                .verifyComplete();
+        assert pendientes.size() == 0 : "La entrada vencida debe borrarse";
+    }
+
+    @Test
+    void publishErrorShouldPropagateAndCleanUp() {
+        StepVerifier.create(pendientes.publishAndAwait(c -> Mono.error(new IllegalStateException()), Duration.ofSeconds(5)))
+                .expectError(IllegalStateException.class)
+                .verify();
+        assert pendientes.size() == 0;
+    }
+
+    @Test
+    void unknownCorrelationShouldBeIgnored() {
+        pendientes.complete(null);
+        pendientes.complete("desconocida".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.notification;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.test.StepVerifier;
+
+/**
+ * Test básico para StockNotifier
+ * Verifica la difusión a suscriptores y la detección de cruces de umbral
+ */
+class StockNotifierTest {
+
+    private final StockNotifier notifier = new StockNotifier(16, BufferOverflowStrategy.DROP_OLDEST, 100);
+
+    @Test
+    void subscribersShouldReceivePreviousStock() {
+        StepVerifier.create(notifier.subscribe().take(2))
+                .then(() -> {
+                    notifier.publish(1L, 10);
+                    notifier.publish(1L, 3);
+                })
+                .expectNextMatches(cambio -> cambio.getStock() == 10 && cambio.getStockAnterior() == null)
+                .expectNextMatches(cambio -> cambio.getStock() == 3 && cambio.getStockAnterior() == 10)
+                .verifyComplete();
+    }
+
+    @Test
+    void crossingShouldOnlyTriggerWhenGoingBelowThreshold() {
+        assert new StockChange(1L, 3, 10, null).cruzaUmbral(5);
+        assert new StockChange(1L, 3, null, null).cruzaUmbral(5);
+        assert !new StockChange(1L, 2, 3, null).cruzaUmbral(5) : "Ya estaba bajo el umbral";
+        assert !new StockChange(1L, 8, 3, null).cruzaUmbral(5);
+    }
+
+    @Test
+    void publishWithoutSubscribersShouldNotFail() {
+        notifier.publish(1L, 5);
+        notifier.publish(null, 5);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.classes.OutboxEvento;
+import org.example.events.ProductEvent;
+import org.example.events.ProductUpdatedEvent;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Test básico para el envío de OutboxRepository sin base
+ * Verifica que los eventos de un producto se envían en orden y los de productos distintos en paralelo
+ */
+class OutboxRepositoryTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OutboxRepository outbox = new OutboxRepository(null, null, objectMapper);
+
+    private OutboxEvento evento(long fila, long producto, String nombre) throws Exception {
+        ProductUpdatedEvent event = new ProductUpdatedEvent(producto, nombre, "d", 1.0, 1);
+        return new OutboxEvento(fila, "product-events", ProductUpdatedEvent.class.getName(),
+                objectMapper.writeValueAsString(event), null, null, null);
+    }
+
+    @Test
+    void eventsOfOneProductShouldBeSentInOrder() throws Exception {
+        List<String> enviados = new CopyOnWriteArrayList<>();
+        List<OutboxEvento> eventos = List.of(evento(1, 1, "A1"), evento(2, 2, "B1"), evento(3, 1, "A2"));
+
+        List<Long> ids = outbox.enOrdenPorProducto(eventos, 16, (evento, payload) -> {
+                    // El primero del producto 1 tarda: el segundo espera a su confirmación
+                    Duration espera = nombre(payload).equals("A1") ? Duration.ofMillis(100) : Duration.ZERO;
+                    return Mono.delay(espera).doOnNext(t -> enviados.add(nombre(payload))).then();
+                })
+                .collectList()
+                .block();
+
+        assert ids.size() == 3 && ids.containsAll(List.of(1L, 2L, 3L));
+        assert enviados.indexOf("A1") < enviados.indexOf("A2") : "Orden del producto 1: " + enviados;
+        assert enviados.indexOf("B1") < enviados.indexOf("A1") : "El producto 2 no espera al 1: " + enviados;
+    }
+
+    @Test
+    void unreadablePayloadShouldFailTheBatch() throws Exception {
+        OutboxEvento ilegible = evento(2, 1, "A");
+        ilegible.setTipo("java.lang.String");
+
+        try {
+            outbox.enOrdenPorProducto(List.of(evento(1, 1, "A"), ilegible), 16, (evento, payload) -> Mono.empty())
+                    .collectList()
+                    .block();
+            assert false : "Debe fallar";
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage().contains("java.lang.String");
+        }
+    }
+
+    private static String nombre(ProductEvent event) {
+        return ((ProductUpdatedEvent) event).getNombre();
+    }
+}
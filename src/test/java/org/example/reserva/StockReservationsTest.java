@@ -0,0 +1,200 @@
+package org.example.reserva;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cache.ProductCache;
+import org.example.classes.Reserva;
+import org.example.events.ProductStockAdjustedEvent;
+import org.example.exception.StockInsuficienteException;
+import org.example.producer.ProductProducer;
+import org.example.repository.StockLeaseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.reactive.TransactionCallback;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test básico para StockReservations sin base ni Kafka
+ * Verifica arriendo, confirmación con volcado, vencimiento y devolución de lo ocioso
+ */
+class StockReservationsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private StockReservations reservations(ArriendosEnMemoria leases, Duration ociosidad) {
+        ProductProducer producer = new ProductProducer(null, null, null, null, false, Duration.ofSeconds(1)) {
+            @Override
+            public Mono<Void> sendProductStockAdjustedEvent(ProductStockAdjustedEvent event) {
+                return Mono.empty();
+            }
+        };
+        TransactionalOperator sinTransaccion = new TransactionalOperator() {
+            @Override
+            public <T> Mono<T> transactional(Mono<T> mono) {
+                return mono;
+            }
+
+            @Override
+            public <T> Flux<T> execute(TransactionCallback<T> action) {
+                return Flux.defer(() -> Flux.from(action.doInTransaction(null)));
+            }
+        };
+        return new StockReservations(leases, producer, new ProductCache(registry, 10, Duration.ofMinutes(1)),
+                sinTransaccion, registry, 50, 4, 0.25, Duration.ofMinutes(10), Duration.ofHours(1),
+                Duration.ofMillis(50), ociosidad, Duration.ofMinutes(2));
+    }
+
+    private double productosEnMemoria() {
+        return registry.get("productos.reservas.productos").gauge().value();
+    }
+
+    @Test
+    void reservationsShouldBeServedFromOneLease() {
+        ArriendosEnMemoria leases = new ArriendosEnMemoria(1000);
+        StockReservations reservations = reservations(leases, Duration.ofMinutes(1));
+
+        StepVerifier.create(reservations.reservar(1L, 2, null)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(reservations.reservar(1L, 3, null)).expectNextCount(1).verifyComplete();
+
+        assert leases.arriendos == 1 : "La segunda reserva sale del bloque ya arrendado";
+        assert leases.stock == 950 && leases.arrendado == 50;
+    }
+
+    @Test
+    void scarceStockShouldOnlyBePartlyLeased() {
+        ArriendosEnMemoria leases = new ArriendosEnMemoria(8);
+        StockReservations reservations = reservations(leases, Duration.ofMinutes(1));
+
+        StepVerifier.create(reservations.reservar(1L, 1, null)).expectNextCount(1).verifyComplete();
+
+        assert leases.arrendado == 2 : "Una cuarta parte del stock restante, no todo: " + leases.arrendado;
+        assert leases.stock == 6;
+    }
+
+    @Test
+    void unknownProductShouldNotBeKeptInMemory() {
+        StockReservations reservations = reservations(new ArriendosEnMemoria(10), Duration.ofMinutes(1));
+
+        StepVerifier.create(reservations.reservar(99L, 1, null)).verifyComplete();
+
+        assert productosEnMemoria() == 0;
+    }
+
+    @Test
+    void missingStockShouldFailWithConflict() {
+        StockReservations reservations = reservations(new ArriendosEnMemoria(2), Duration.ofMinutes(1));
+
+        StepVerifier.create(reservations.reservar(1L, 5, null))
+                .expectError(StockInsuficienteException.class)
+                .verify();
+    }
+
+    @Test
+    void confirmShouldCompleteWhenTheFlushPersistsIt() {
+        ArriendosEnMemoria leases = new ArriendosEnMemoria(1000);
+        StockReservations reservations = reservations(leases, Duration.ofMinutes(1));
+        Reserva reserva = reservations.reservar(1L, 2, null).block();
+
+        AtomicBoolean confirmada = new AtomicBoolean();
+        reservations.confirmar(reserva.getId()).subscribe(confirmada::set);
+        assert !confirmada.get() : "Espera al volcado";
+
+        reservations.volcar(false).block();
+
+        assert confirmada.get();
+        assert leases.vendidas == 2 && leases.arrendado == 48;
+        StepVerifier.create(reservations.confirmar(reserva.getId())).expectNext(false).verifyComplete();
+    }
+
+    @Test
+    void expiredReservationsShouldReturnUnitsToTheLease() throws InterruptedException {
+        ArriendosEnMemoria leases = new ArriendosEnMemoria(200);
+        StockReservations reservations = reservations(leases, Duration.ofMinutes(1));
+        Reserva reserva = reservations.reservar(1L, 50, Duration.ofMillis(1)).block();
+
+        Thread.sleep(20);
+        reservations.volcar(false).block();
+
+        assert !reservations.liberar(reserva.getId()) : "Ya vencida";
+        StepVerifier.create(reservations.reservar(1L, 50, null)).expectNextCount(1).verifyComplete();
+        assert leases.arriendos == 1 : "Las unidades vencidas vuelven al bloque sin arrendar otra vez";
+    }
+
+    @Test
+    void idleLeasesShouldBeReturnedAndForgotten() {
+        ArriendosEnMemoria leases = new ArriendosEnMemoria(1000);
+        StockReservations reservations = reservations(leases, Duration.ZERO);
+        Reserva reserva = reservations.reservar(1L, 2, null).block();
+
+        reservations.volcar(false).block();
+
+        assert leases.stock == 998 && leases.arrendado == 2 : "Vuelve todo salvo lo reservado";
+        assert productosEnMemoria() == 0;
+
+        // La reserva sigue viva y sus unidades vuelven a una existencia nueva
+        assert reservations.liberar(reserva.getId());
+        reservations.volcar(false).block();
+        assert leases.stock == 1000 && leases.arrendado == 0;
+    }
+
+    // Un producto (id 1) con su stock y lo arrendado por la réplica
+    static class ArriendosEnMemoria extends StockLeaseRepository {
+
+        int stock;
+        int arrendado;
+        int vendidas;
+        int arriendos;
+
+        ArriendosEnMemoria(int stock) {
+            super(null);
+            this.stock = stock;
+        }
+
+        @Override
+        public Mono<Tuple2<Integer, Integer>> arrendar(Long id, int cantidad, int bloque, double fraccion, String instancia) {
+            if (id != 1L) {
+                return Mono.empty();
+            }
+            int n = Math.min(stock, Math.max(cantidad, Math.min(bloque, (int) Math.ceil(stock * fraccion))));
+            stock -= n;
+            arrendado += n;
+            arriendos++;
+            return Mono.just(Tuples.of(n, stock));
+        }
+
+        @Override
+        public Flux<Tuple2<Long, Integer>> devolver(Map<Long, Integer> cantidades, String instancia) {
+            return Flux.fromIterable(cantidades.entrySet())
+                    .map(fila -> {
+                        stock += fila.getValue();
+                        arrendado -= fila.getValue();
+                        return Tuples.of(fila.getKey(), stock);
+                    });
+        }
+
+        @Override
+        public Mono<Void> confirmar(Map<Long, Integer> cantidades, String instancia) {
+            return Mono.fromRunnable(() -> cantidades.values().forEach(vendida -> {
+                arrendado -= vendida;
+                vendidas += vendida;
+            }));
+        }
+
+        @Override
+        public Mono<Void> renovar(String instancia) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Flux<Tuple2<Long, Integer>> recuperarAbandonados(Duration abandono) {
+            return Flux.empty();
+        }
+    }
+}
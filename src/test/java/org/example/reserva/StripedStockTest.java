@@ -0,0 +1,55 @@
+package org.example.reserva;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test básico para el stock libre por franjas
+ * Verifica que se reúnen unidades de varias franjas y que con concurrencia nunca se toma de más
+ */
+class StripedStockTest {
+
+    @Test
+    void shouldGatherUnitsAcrossStripes() throws Exception {
+        StripedStock stock = new StripedStock(4);
+        // Cada hilo devuelve a su franja: las unidades quedan repartidas
+        for (int i = 0; i < 4; i++) {
+            Thread hilo = new Thread(() -> stock.devolver(5));
+            hilo.start();
+            hilo.join();
+        }
+
+        assert stock.disponible() == 20;
+        assert stock.tomar(12) : "Se reúnen de varias franjas";
+        assert stock.disponible() == 8;
+        assert !stock.tomar(9) : "No hay 9 libres";
+        assert stock.disponible() == 8 : "Un intento fallido no pierde unidades";
+        assert stock.drenar() == 8;
+        assert stock.disponible() == 0;
+    }
+
+    @Test
+    void shouldNeverOversellUnderContention() throws Exception {
+        StripedStock stock = new StripedStock(8);
+        stock.devolver(1000);
+        AtomicInteger tomadas = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < 2000; i++) {
+            executor.submit(() -> {
+                if (stock.tomar(1)) {
+                    tomadas.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assert executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assert tomadas.get() + stock.disponible() == 1000 : "Tomadas y libres suman lo que había";
+        assert tomadas.get() <= 1000;
+    }
+}
@@ -46,6 +46,14 @@ class ProductServiceTest {
         assert producto.getStock() == 5;
     }
 
+    @Test
+    void priceShouldMatchAtCentScale() {
+        // 19.99f llega como 19.989999771118164 y la base guarda 19.99
+        assert ProductService.mismoPrecio(19.99, (double) 19.99f);
+        assert !ProductService.mismoPrecio(19.99, 19.98);
+        assert !ProductService.mismoPrecio(null, 19.99);
+    }
+
     @Test
     void testServiceMethodsExist() {
         // Versión simplificada sin reflection para evitar excepciones